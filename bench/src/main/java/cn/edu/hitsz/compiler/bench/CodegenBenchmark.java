@@ -0,0 +1,41 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.CompilationContext;
+import cn.edu.hitsz.compiler.CompilerOptions;
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.asm.MachineInstruction;
+import cn.edu.hitsz.compiler.ir.AlgebraicSimplifier;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.LocalValueNumbering;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+/**
+ * 代码生成, 包括指令选择, 寄存器分配, 溢出代码插入与窥孔优化, 不包括格式化输出
+ * <br>
+ * 与编译器中的用法一致, 输入为代数化简与局部值编号之后的中间代码. 活跃变量数超过寄存器池大小时会发生溢出.
+ */
+public class CodegenBenchmark extends GeneratedProgram {
+    @Param({"linear-scan", "graph-coloring"})
+    public String allocator;
+
+    private List<Instruction> instructions;
+    private CompilationContext context;
+
+    @Setup(Level.Trial)
+    public void generateIR() {
+        final var ir = Fixtures.generateIR(Fixtures.context(sourcePath), lrTable);
+        instructions = new LocalValueNumbering().run(new AlgebraicSimplifier().run(ir));
+        final var options = CompilerOptions.parse(new String[]{"--allocator=" + allocator});
+        context = new CompilationContext(options, sourcePath, System.getProperty("java.io.tmpdir"));
+    }
+
+    @Benchmark
+    public List<MachineInstruction> codegen() {
+        final var generator = new AssemblyGenerator(context);
+        generator.loadIR(instructions);
+        generator.run();
+        return generator.getMachineCode();
+    }
+}
@@ -0,0 +1,27 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * IR 模拟执行, 与编译器中的用法一致, 输入为未经优化的中间代码
+ */
+public class EmulatorBenchmark extends GeneratedProgram {
+    private List<Instruction> instructions;
+
+    @Setup(Level.Trial)
+    public void generateIR() {
+        instructions = Fixtures.generateIR(Fixtures.context(sourcePath), lrTable);
+    }
+
+    @Benchmark
+    public Optional<Integer> emulate() {
+        return IREmulator.load(instructions).execute();
+    }
+}
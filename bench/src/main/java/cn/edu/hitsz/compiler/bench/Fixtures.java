@@ -0,0 +1,101 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.CompilationContext;
+import cn.edu.hitsz.compiler.CompilerOptions;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 各基准测试共用的准备工作, 只在 {@code @Setup} 中调用, 不计入测量
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * 码点文件, 语法文件与 LR 分析表都以相对路径读取, 不在仓库根目录下运行时尽早报错
+     */
+    static void checkWorkingDirectory() {
+        if (!Files.exists(Paths.get(FilePathConfig.LR1_TABLE_PATH))) {
+            throw new RuntimeException("Benchmarks must run from the repository root, %s not found in %s"
+                    .formatted(FilePathConfig.LR1_TABLE_PATH, Paths.get("").toAbsolutePath()));
+        }
+    }
+
+    /**
+     * 读取码点文件, 语法文件与 LR 分析表
+     */
+    static LRTable loadTables() {
+        checkWorkingDirectory();
+        TokenKind.loadTokenKinds();
+        GrammarInfo.getBeginProduction();
+        return new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+    }
+
+    /**
+     * 将生成的程序写入临时文件, JVM 退出时删除
+     *
+     * @return 临时文件路径
+     */
+    static String writeSource(String program) {
+        try {
+            final var path = Files.createTempFile("bench-", ".txt");
+            path.toFile().deleteOnExit();
+            FileUtils.writeFile(path.toString(), program);
+            return path.toString();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for temporary source file", e);
+        }
+    }
+
+    /**
+     * @return 以默认选项编译 sourcePath 的上下文
+     */
+    static CompilationContext context(String sourcePath) {
+        return new CompilationContext(CompilerOptions.defaults(), sourcePath, System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * 对上下文中的源文件做词法分析, 同时填好上下文中的符号表, 词法单元的位置与符号编号
+     */
+    static List<Token> lex(CompilationContext context) {
+        final var lexer = new LexicalAnalyzer(context);
+        lexer.loadFile(context.getSourcePath());
+        lexer.run();
+        context.setSourcePositions(lexer.getPositions());
+        context.setTokenSymbols(lexer.getSymbolIds());
+        final var tokens = new ArrayList<Token>();
+        lexer.getTokens().forEach(tokens::add);
+        return tokens;
+    }
+
+    /**
+     * 对上下文中的源文件做词法分析与语法分析
+     *
+     * @return 生成的中间代码
+     */
+    static List<Instruction> generateIR(CompilationContext context, LRTable lrTable) {
+        final var parser = new SyntaxAnalyzer(context);
+        parser.loadTokens(lex(context));
+        parser.loadLRTable(lrTable);
+        final var irGenerator = new IRGenerator();
+        parser.registerObserver(irGenerator);
+        parser.run();
+        return irGenerator.getIR();
+    }
+}
@@ -0,0 +1,38 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以 {@link ProgramGenerator} 生成的程序为输入的基准测试的公共部分
+ * <br>
+ * 程序的三个维度都是 JMH 参数, 可以在命令行用 {@code -p statements=100,1000,10000} 等覆盖, 用于测量随规模变化的曲线.
+ * 程序在准备阶段生成一次并写入临时文件.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class GeneratedProgram {
+    @Param({"10", "100", "1000"})
+    public int statements;
+
+    @Param({"1", "3"})
+    public int expressionDepth;
+
+    @Param({"4", "16"})
+    public int liveVariables;
+
+    protected LRTable lrTable;
+    protected String sourcePath;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        lrTable = Fixtures.loadTables();
+        sourcePath = Fixtures.writeSource(new ProgramGenerator(statements, expressionDepth, liveVariables, 42).generate());
+    }
+}
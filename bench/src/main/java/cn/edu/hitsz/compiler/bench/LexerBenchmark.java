@@ -0,0 +1,18 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * 词法分析, 包括读取源文件, 与编译器中的用法一致
+ */
+public class LexerBenchmark extends GeneratedProgram {
+    @Benchmark
+    public Iterable<Token> lex() {
+        final var lexer = new LexicalAnalyzer(Fixtures.context(sourcePath));
+        lexer.loadFile(sourcePath);
+        lexer.run();
+        return lexer.getTokens();
+    }
+}
@@ -0,0 +1,57 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.CompilationContext;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * 语法分析, 分别测量不带观察者, 只带一个观察者与带全部观察者的情形, 差值即为各观察者的开销
+ * <br>
+ * 语义分析器会修改符号表, 且同一条目的类型只能设置一次, 因此每次调用前都重新做一遍词法分析, 得到新的上下文与符号表.
+ * 这部分在 {@code Level.Invocation} 的准备阶段完成, 不计入测量.
+ */
+public class ParserBenchmark extends GeneratedProgram {
+    @Param({"none", "ProductionCollector", "SemanticAnalyzer", "IRGenerator", "all"})
+    public String observers;
+
+    private CompilationContext context;
+    private List<Token> tokens;
+
+    @Setup(Level.Invocation)
+    public void lex() {
+        context = Fixtures.context(sourcePath);
+        tokens = Fixtures.lex(context);
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        final var parser = new SyntaxAnalyzer(context);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(lrTable);
+
+        final var all = observers.equals("all");
+        if (all || observers.equals("ProductionCollector")) {
+            final var collector = new ProductionCollector(GrammarInfo.getBeginProduction());
+            parser.registerObserver(collector);
+            blackhole.consume(collector);
+        }
+        if (all || observers.equals("SemanticAnalyzer")) {
+            parser.registerObserver(new SemanticAnalyzer());
+        }
+        if (all || observers.equals("IRGenerator")) {
+            final var irGenerator = new IRGenerator();
+            parser.registerObserver(irGenerator);
+            blackhole.consume(irGenerator);
+        }
+
+        parser.run();
+    }
+}
@@ -0,0 +1,79 @@
+package cn.edu.hitsz.compiler.bench;
+
+import java.util.Random;
+
+/**
+ * 按参数生成合法的源程序, 用于测量各阶段随输入规模的变化
+ * <br>
+ * 生成的程序先声明并初始化 liveVariables 个变量, 再依次对它们轮流赋值 statements 次, 每个右部都是深度为 expressionDepth
+ * 的满二叉表达式树, 叶子为已初始化的变量或小常数. 最后返回所有变量之和, 因此每个变量从其最后一次赋值起一直活跃到程序末尾,
+ * 同时活跃的变量数即为 liveVariables, 可以直接控制寄存器分配的压力.
+ * <br>
+ * 相同的参数与种子总是生成相同的程序.
+ */
+public final class ProgramGenerator {
+    private static final char[] OPERATORS = {'+', '-', '*'};
+
+    private final int statements;
+    private final int expressionDepth;
+    private final int liveVariables;
+    private final Random random;
+
+    /**
+     * @param statements      赋值语句个数, 不含初始化与返回语句
+     * @param expressionDepth 每个赋值右部的表达式深度, 0 表示只有一个叶子
+     * @param liveVariables   变量个数, 至少为 1
+     * @param seed            随机数种子
+     */
+    public ProgramGenerator(int statements, int expressionDepth, int liveVariables, long seed) {
+        if (statements < 0 || expressionDepth < 0 || liveVariables <= 0) {
+            throw new RuntimeException("Illegal program shape: statements=%d depth=%d live=%d"
+                    .formatted(statements, expressionDepth, liveVariables));
+        }
+        this.statements = statements;
+        this.expressionDepth = expressionDepth;
+        this.liveVariables = liveVariables;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @return 生成的源程序文本
+     */
+    public String generate() {
+        final var builder = new StringBuilder();
+        for (int i = 0; i < liveVariables; i++) {
+            builder.append("int v").append(i).append(";\n");
+        }
+        for (int i = 0; i < liveVariables; i++) {
+            builder.append('v').append(i).append(" = ").append(i + 1).append(";\n");
+        }
+        for (int i = 0; i < statements; i++) {
+            builder.append('v').append(i % liveVariables).append(" = ");
+            expression(builder, expressionDepth);
+            builder.append(";\n");
+        }
+
+        builder.append("return v0");
+        for (int i = 1; i < liveVariables; i++) {
+            builder.append(" + v").append(i);
+        }
+        return builder.append(";\n").toString();
+    }
+
+    private void expression(StringBuilder builder, int depth) {
+        if (depth == 0) {
+            if (random.nextInt(4) == 0) {
+                builder.append(random.nextInt(16));
+            } else {
+                builder.append('v').append(random.nextInt(liveVariables));
+            }
+            return;
+        }
+
+        builder.append("( ");
+        expression(builder, depth - 1);
+        builder.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+        expression(builder, depth - 1);
+        builder.append(" )");
+    }
+}
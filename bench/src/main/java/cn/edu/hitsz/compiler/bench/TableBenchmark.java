@@ -0,0 +1,39 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LR 分析表的读取与构造, 与输入程序无关
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures.checkWorkingDirectory();
+        TokenKind.loadTokenKinds();
+    }
+
+    @Benchmark
+    public LRTable tableLoad() {
+        return new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+    }
+
+    @Benchmark
+    public LRTable tableGenerate() {
+        final var generator = new TableGenerator();
+        generator.run();
+        return generator.getTable();
+    }
+}
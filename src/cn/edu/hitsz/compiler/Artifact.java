@@ -0,0 +1,61 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+/**
+ * 编译流程可以输出的各个文件, 由 {@code --emit} 选择
+ * <br>
+ * 没有被选择的文件不会被写出, 只为它服务的观察者与阶段也不会被创建或执行:
+ * 不输出规约列表时不注册 {@link cn.edu.hitsz.compiler.parser.ProductionCollector},
+ * 不输出 IR 模拟执行结果且不开启 {@code --simulate} 时不模拟执行 IR,
+ * 不输出后端结果且不需要机器码 ({@code --simulate}, {@code --allocation-report}) 时不运行优化与后端.
+ */
+public enum Artifact {
+    TOKENS("tokens", FilePathConfig.TOKEN_PATH),
+    OLD_SYMBOL_TABLE("old-symbols", FilePathConfig.OLD_SYMBOL_TABLE),
+    PRODUCTIONS("parser-list", FilePathConfig.PARSER_PATH),
+    NEW_SYMBOL_TABLE("new-symbols", FilePathConfig.NEW_SYMBOL_TABLE),
+    IR("ir", FilePathConfig.INTERMEDIATE_CODE_PATH),
+    EMULATE_RESULT("emulate", FilePathConfig.EMULATE_RESULT),
+    /**
+     * 后端输出, 其路径由输出格式决定, 见 {@link CompilerOptions#getOutputPath()}
+     */
+    OUTPUT("output", null);
+
+    private final String optionName;
+    private final String path;
+
+    Artifact(String optionName, String path) {
+        this.optionName = optionName;
+        this.path = path;
+    }
+
+    /**
+     * @param name {@code --emit} 中的名字
+     * @return 对应的输出文件
+     * @throws RuntimeException 名字无法识别
+     */
+    public static Artifact fromOptionName(String name) {
+        for (final var artifact : values()) {
+            if (artifact.optionName.equals(name)) {
+                return artifact;
+            }
+        }
+        throw new RuntimeException("Unknown artifact: " + name);
+    }
+
+    /**
+     * @return {@code --emit} 中的名字
+     */
+    public String getOptionName() {
+        return optionName;
+    }
+
+    /**
+     * @param options 编译选项, 决定后端输出的路径
+     * @return 文件的默认路径, 其文件名即输出目录中的文件名
+     */
+    public String getPath(CompilerOptions options) {
+        return path != null ? path : options.getOutputPath();
+    }
+}
@@ -0,0 +1,128 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.Instrumentation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 批量编译, 在一个 JVM 中用固定大小的线程池并行编译多个源文件
+ * <br>
+ * 所有任务共享 {@link CompilationPipeline} 中只读的码点, 语法与 LR 分析表, 其余状态都属于各自的任务.
+ * 每个源文件的输出写入输出根目录下以其文件名 (去掉扩展名) 命名的子目录, 重名时追加序号.
+ * 开启 {@code --allocation-report} 时按源文件的顺序逐个打印 "源文件: 寄存器分配统计".
+ * 全部完成后在标准输出打印吞吐量. 各任务只在开启 {@code --profile} 时记录阶段统计数据 (见 {@link CompilationPipeline#compile(CompilerOptions, String, String)}),
+ * 此时汇总实例同样开启, 打印各阶段耗时的总和, 并将各阶段统计数据的总和写入输出根目录; 未开启时既不记录也不汇总.
+ */
+public class BatchCompiler {
+    private final CompilationPipeline pipeline;
+    private final CompilerOptions options;
+
+    public BatchCompiler(CompilationPipeline pipeline, CompilerOptions options) {
+        this.pipeline = pipeline;
+        this.options = options;
+    }
+
+    /**
+     * 展开批量编译的输入
+     *
+     * @param input 目录或列表文件. 目录表示其中所有的 .txt 文件, 列表文件的每个非空行是一个源文件路径
+     * @return 按顺序排列的源文件路径
+     */
+    public static List<String> listSources(String input) {
+        final var path = Paths.get(input);
+        if (Files.isDirectory(path)) {
+            try (final var files = Files.list(path)) {
+                return files.filter(file -> file.toString().endsWith(".txt"))
+                        .map(Path::toString).sorted().toList();
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception for " + input, e);
+            }
+        }
+        return FileUtils.readLines(input).stream().map(String::trim).filter(line -> !line.isEmpty()).toList();
+    }
+
+    /**
+     * 编译所有源文件并打印统计信息
+     *
+     * @param sources   源文件路径
+     * @param outputDir 输出根目录
+     * @param threads   线程数
+     * @return 编译失败的文件数
+     */
+    public int run(List<String> sources, String outputDir, int threads) {
+        final var outputs = outputDirectories(sources, outputDir);
+        final var executor = Executors.newFixedThreadPool(threads);
+        final var begin = System.nanoTime();
+        final var futures = new ArrayList<Future<CompilationPipeline.Result>>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            final var source = sources.get(i);
+            final var output = outputs.get(i);
+            futures.add(executor.submit(() -> pipeline.compile(options, source, output)));
+        }
+
+        // 与各任务的统计实例一致, 只在开启 --profile 时汇总
+        final var totals = options.isProfile() ? Instrumentation.enabled() : Instrumentation.disabled();
+        var failed = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    final var result = futures.get(i).get();
+                    if (result.report() != null) {
+                        System.out.println(sources.get(i) + ": " + result.report());
+                    }
+                    if (totals.isEnabled()) {
+                        totals.merge(result.instrumentation());
+                    }
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.err.println(sources.get(i) + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch compilation interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        final var wallNanos = System.nanoTime() - begin;
+
+        System.out.printf("files=%d failed=%d threads=%d wall=%.3fms throughput=%.1f files/s%n",
+                sources.size(), failed, threads, wallNanos / 1e6, sources.size() / (wallNanos / 1e9));
+        if (totals.isEnabled()) {
+            final var phases = new StringBuilder("phase-totals");
+            for (final var phase : totals.getPhases()) {
+                phases.append(" %s=%.3fms".formatted(phase.getName(), phase.getWallNanos() / 1e6));
+            }
+            System.out.println(phases);
+            CompilationPipeline.writeProfile(totals, Paths.get(outputDir).resolve(
+                    Paths.get(options.getProfilePath()).getFileName()).toString());
+        }
+        return failed;
+    }
+
+    private static List<String> outputDirectories(List<String> sources, String outputDir) {
+        final var used = new HashSet<String>();
+        final var outputs = new ArrayList<String>(sources.size());
+        for (final var source : sources) {
+            final var fileName = Paths.get(source).getFileName().toString();
+            final var dot = fileName.lastIndexOf('.');
+            final var baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+            var name = baseName;
+            for (int k = 1; !used.add(name); k++) {
+                name = baseName + "-" + k;
+            }
+            outputs.add(Paths.get(outputDir, name).toString());
+        }
+        return outputs;
+    }
+}
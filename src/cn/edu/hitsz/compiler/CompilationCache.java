@@ -0,0 +1,277 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 以内容寻址的整文件编译缓存, 命中时 {@link Main} 直接复制输出, 不读取 LR 分析表也不运行编译流程
+ * <br>
+ * 缓存的键是以下内容的 SHA-256: 源文件, 语法文件, 码点文件, LR 分析表, 编译器版本与影响输出的编译选项.
+ * 编译器版本取编译器自身所有 class 文件 (或所在 jar) 的摘要, 改动代码后旧的缓存自然失效, 不需要手工维护版本号;
+ * 无法定位 class 文件时不使用缓存.
+ * <br>
+ * 每个条目是缓存目录下 entries 中以键命名的目录, 其中存放 {@code --emit} 选择输出的文件, 以及模拟执行, 语法分析统计与行号对照表.
+ * 写入时先在 tmp 中建好完整的目录再原子地重命名为条目, 删除时也先原子地移入 tmp 再删除内容, 因此并发的构建只会看到完整的条目或没有条目,
+ * 同一个键被同时写入时以先完成重命名的为准. 条目目录的修改时间即最近一次使用的时间, 每次写入后按此淘汰最久未用的条目,
+ * 直到总大小不超过上限.
+ */
+public class CompilationCache {
+    private static final String ENTRIES = "entries";
+    private static final String TEMPORARY = "tmp";
+    private static volatile String compilerVersion;
+
+    private final Path root;
+    private final long maxBytes;
+
+    /**
+     * @param directory 缓存目录, 不存在时创建
+     * @param maxBytes  所有条目的总大小上限, 单位为字节
+     */
+    public CompilationCache(String directory, long maxBytes) {
+        this.root = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(root.resolve(ENTRIES));
+            Files.createDirectories(root.resolve(TEMPORARY));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + directory, e);
+        }
+    }
+
+    /**
+     * @param options 编译选项
+     * @return 这次编译的结果能否被缓存; 打印到标准输出或写出统计数据的编译不使用缓存
+     */
+    public static boolean isCacheable(CompilerOptions options) {
+        return !options.isAllocationReport() && !options.isProfile();
+    }
+
+    /**
+     * 计算一次编译的键
+     *
+     * @param options    编译选项
+     * @param sourcePath 源文件路径
+     * @return 十六进制的键, 无法确定编译器版本时为 null
+     */
+    public static String key(CompilerOptions options, String sourcePath) {
+        final var version = compilerVersion();
+        if (version.isEmpty()) {
+            return null;
+        }
+
+        final var digest = sha256();
+        for (final var path : List.of(sourcePath, FilePathConfig.GRAMMAR_PATH, FilePathConfig.CODING_MAP_PATH,
+                FilePathConfig.LR1_TABLE_PATH)) {
+            final var content = readAllBytes(Paths.get(path));
+            // 每段内容前写入长度, 避免不同的切分拼出相同的字节流
+            digest.update(Long.toString(content.length).getBytes());
+            digest.update(content);
+        }
+        digest.update(version.getBytes());
+        digest.update(options.getOutputKey().getBytes());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * 若缓存中有该键的条目, 则将其中的文件复制到输出目录
+     *
+     * @param key       {@link #key} 算出的键
+     * @param outputDir 输出目录
+     * @return 是否命中
+     */
+    public boolean restore(String key, String outputDir) {
+        final var entry = root.resolve(ENTRIES).resolve(key);
+        try {
+            final var output = Paths.get(outputDir);
+            Files.createDirectories(output);
+            try (final var files = Files.list(entry)) {
+                for (final var file : files.toList()) {
+                    Files.copy(file, output.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            // 未命中, 或条目在读取途中被别的构建淘汰了
+            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for cache entry " + entry, e);
+        }
+    }
+
+    /**
+     * 将输出目录中这次编译产生的文件存为该键的条目, 再按大小上限淘汰最久未用的条目
+     *
+     * @param key       {@link #key} 算出的键
+     * @param options   编译选项, 决定有哪些输出文件
+     * @param outputDir 输出目录
+     */
+    public void store(String key, CompilerOptions options, String outputDir) {
+        final var entry = root.resolve(ENTRIES).resolve(key);
+        final var staging = root.resolve(TEMPORARY).resolve(key + "-" + UUID.randomUUID());
+        try {
+            Files.createDirectory(staging);
+            for (final var path : outputFiles(options)) {
+                final var name = Paths.get(path).getFileName();
+                final var file = Paths.get(outputDir).resolve(name);
+                Files.copy(file, staging.resolve(name));
+            }
+            try {
+                Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileSystemException e) {
+                // 别的构建已经写入了同一个键, 内容相同, 丢弃自己的即可; 目标非空时各平台抛出的异常类型不同, 以目标是否存在为准
+                if (!Files.isDirectory(entry)) {
+                    throw e;
+                }
+                deleteTree(staging);
+            }
+            evict();
+        } catch (IOException e) {
+            deleteTree(staging);
+            throw new RuntimeException("IO Exception for cache entry " + entry, e);
+        }
+    }
+
+    /**
+     * 按最近使用时间从旧到新删除条目, 直到总大小不超过上限
+     */
+    private void evict() throws IOException {
+        final var sizes = new HashMap<Path, Long>();
+        final var used = new HashMap<Path, Long>();
+        var total = 0L;
+        try (final var entries = Files.list(root.resolve(ENTRIES))) {
+            for (final var entry : entries.toList()) {
+                try {
+                    final var size = sizeOf(entry);
+                    used.put(entry, Files.getLastModifiedTime(entry).toMillis());
+                    sizes.put(entry, size);
+                    total += size;
+                } catch (NoSuchFileException | UncheckedIOException e) {
+                    // 已被别的构建淘汰
+                }
+            }
+        }
+
+        final var oldestFirst = new ArrayList<>(used.keySet());
+        oldestFirst.sort(Comparator.comparingLong(used::get));
+        for (final var entry : oldestFirst) {
+            if (total <= maxBytes) {
+                break;
+            }
+            final var trash = root.resolve(TEMPORARY).resolve("evicted-" + UUID.randomUUID());
+            try {
+                Files.move(entry, trash, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            deleteTree(trash);
+            total -= sizes.get(entry);
+        }
+    }
+
+    /**
+     * @return 在该选项下编译流程在输出目录中产生的所有文件的默认路径; 未开启的功能对应的文件可能是以前留下的, 不计入其中
+     */
+    private static List<String> outputFiles(CompilerOptions options) {
+        final var paths = new ArrayList<String>();
+        for (final var artifact : Artifact.values()) {
+            if (options.emits(artifact)) {
+                paths.add(artifact.getPath(options));
+            }
+        }
+        if (options.isSimulate()) {
+            paths.add(FilePathConfig.SIMULATE_RESULT);
+        }
+        if (options.isParserStatistics()) {
+            paths.add(FilePathConfig.PARSER_STATISTICS_PATH);
+        }
+        if (options.isLineInfo() && options.emits(Artifact.OUTPUT)) {
+            paths.add(FilePathConfig.LINE_TABLE_PATH);
+        }
+        return paths;
+    }
+
+    private static long sizeOf(Path directory) throws IOException {
+        try (final var files = Files.list(directory)) {
+            return files.mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+        }
+    }
+
+    private static void deleteTree(Path directory) {
+        try (final var files = Files.walk(directory)) {
+            for (final var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ignored) {
+            // 清理失败只会留下临时目录, 不影响缓存的正确性
+        }
+    }
+
+    /**
+     * @return 编译器自身 class 文件的摘要, 整个 JVM 中只计算一次; 无法定位时为空串
+     */
+    private static String compilerVersion() {
+        var version = compilerVersion;
+        if (version == null) {
+            version = computeCompilerVersion();
+            compilerVersion = version;
+        }
+        return version;
+    }
+
+    private static String computeCompilerVersion() {
+        final var source = CompilationCache.class.getProtectionDomain().getCodeSource();
+        if (source == null) {
+            return "";
+        }
+        try {
+            final var location = Paths.get(source.getLocation().toURI());
+            final var digest = sha256();
+            if (Files.isDirectory(location)) {
+                final var packageDirectory = location.resolve(CompilationCache.class.getPackageName().replace('.', '/'));
+                try (Stream<Path> files = Files.walk(packageDirectory)) {
+                    for (final var file : files.filter(file -> file.toString().endsWith(".class")).sorted().toList()) {
+                        digest.update(location.relativize(file).toString().getBytes());
+                        digest.update(Files.readAllBytes(file));
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return "";
+        }
+    }
+
+    private static byte[] readAllBytes(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+}
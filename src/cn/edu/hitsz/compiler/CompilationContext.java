@@ -0,0 +1,210 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.lexer.SourcePositions;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.ParserStatistics;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.Instrumentation;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 一次编译的上下文, 持有这次编译的全部可变状态: 编译选项, 输入输出路径, 符号表, 临时变量编号, 发现的错误与各阶段的统计数据
+ * <br>
+ * 上下文在编译开始时创建, 传给词法分析器, 语法分析器 (进而传给各个观察者) 与后端, 编译结束后即可丢弃.
+ * 不同的编译各自持有独立的上下文, 因此可以在同一个 JVM 中并行或先后进行, 而码点, 语法与 LR 分析表是所有编译共享的只读数据.
+ * <br>
+ * 上下文只应被一个线程使用.
+ */
+public final class CompilationContext {
+    private final CompilerOptions options;
+    private final String sourcePath;
+    private final String outputDir;
+    private final NumberedSymbolTable symbolTable;
+    private final Instrumentation instrumentation;
+    private final ParserStatistics parserStatistics;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+    private SourcePositions sourcePositions;
+    private int[] instructionLines;
+    private int[] tokenSymbols;
+    private int tempCount = 0;
+
+    /**
+     * @param options    编译选项
+     * @param sourcePath 源文件路径
+     * @param outputDir  输出目录
+     */
+    public CompilationContext(CompilerOptions options, String sourcePath, String outputDir) {
+        this(options, sourcePath, outputDir, Instrumentation.disabled());
+    }
+
+    /**
+     * @param options         编译选项
+     * @param sourcePath      源文件路径
+     * @param outputDir       输出目录
+     * @param instrumentation 记录各阶段统计数据的实例
+     */
+    public CompilationContext(CompilerOptions options, String sourcePath, String outputDir, Instrumentation instrumentation) {
+        this(options, sourcePath, outputDir, instrumentation, new SymbolTable());
+    }
+
+    /**
+     * 使用给定的符号表. 其它构造函数使用单线程的 {@link SymbolTable}; 多个线程各持一个上下文而共同填写同一个符号表时
+     * (如并行的前端), 应传入它们共享的 {@link cn.edu.hitsz.compiler.symtab.ConcurrentSymbolTable}
+     *
+     * @param options         编译选项
+     * @param sourcePath      源文件路径
+     * @param outputDir       输出目录
+     * @param instrumentation 记录各阶段统计数据的实例
+     * @param symbolTable     这次编译的符号表
+     */
+    public CompilationContext(CompilerOptions options, String sourcePath, String outputDir, Instrumentation instrumentation,
+                              NumberedSymbolTable symbolTable) {
+        this.options = options;
+        this.sourcePath = sourcePath;
+        this.outputDir = outputDir;
+        this.instrumentation = instrumentation;
+        this.symbolTable = symbolTable;
+        this.parserStatistics = options.isParserStatistics() ? new ParserStatistics() : null;
+    }
+
+    public CompilerOptions getOptions() {
+        return options;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public String getOutputDir() {
+        return outputDir;
+    }
+
+    public NumberedSymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    /**
+     * @return 这次编译的各阶段统计数据, 未开启时为 {@link Instrumentation#disabled()}
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * @return 语法分析的动作统计, 未开启 {@code --parser-stats} 时为 null
+     */
+    public ParserStatistics getParserStatistics() {
+        return parserStatistics;
+    }
+
+    /**
+     * @return 各词法单元在源文件中的位置, 词法分析之前为 null
+     */
+    public SourcePositions getSourcePositions() {
+        return sourcePositions;
+    }
+
+    /**
+     * @param sourcePositions 词法分析得到的各词法单元的位置
+     */
+    public void setSourcePositions(SourcePositions sourcePositions) {
+        this.sourcePositions = sourcePositions;
+    }
+
+    /**
+     * @param tokenSymbols 词法分析得到的各词法单元对应的符号编号, 不是标识符的为 -1
+     */
+    public void setTokenSymbols(int[] tokenSymbols) {
+        this.tokenSymbols = tokenSymbols;
+    }
+
+    /**
+     * 取得标识符在符号表中的编号. 词法分析记下了编号且下标已知时直接按下标取出, 否则退回按名字查找
+     *
+     * @param tokenIndex 词法单元的下标, 未知时为 -1
+     * @param token      该词法单元
+     * @return 符号编号, 不在符号表中时为 -1
+     */
+    public int symbolOf(int tokenIndex, Token token) {
+        if (tokenSymbols != null && tokenIndex >= 0) {
+            return tokenSymbols[tokenIndex];
+        }
+        return symbolTable.find(token.getText());
+    }
+
+    /**
+     * @return IR 中各条指令所属语句所在的行, 与前端生成的 IR 一一对应; 未开启 {@code --line-info} 时为 null
+     */
+    public int[] getInstructionLines() {
+        return instructionLines;
+    }
+
+    /**
+     * @param instructionLines 前端生成的 IR 中各条指令所属语句所在的行
+     */
+    public void setInstructionLines(int[] instructionLines) {
+        this.instructionLines = instructionLines;
+    }
+
+    /**
+     * 记录一个错误, 发现错误的阶段随后应当从错误中恢复并继续
+     *
+     * @param diagnostic 错误
+     */
+    public void report(Diagnostic diagnostic) {
+        diagnostics.add(diagnostic);
+    }
+
+    /**
+     * @return 按发现顺序排列的全部错误
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * 若已经记录了错误, 则以包含全部错误的异常结束编译
+     *
+     * @throws RuntimeException 已经记录了错误
+     */
+    public void checkDiagnostics() {
+        if (!diagnostics.isEmpty()) {
+            throw new RuntimeException(diagnostics.size() + " error(s)\n"
+                    + diagnostics.stream().map(Diagnostic::toString).collect(Collectors.joining("\n")));
+        }
+    }
+
+    /**
+     * @param defaultPath {@link cn.edu.hitsz.compiler.utils.FilePathConfig} 中的默认输出路径
+     * @return 输出目录中与默认输出同名的文件
+     */
+    public String outputPath(String defaultPath) {
+        return Paths.get(outputDir).resolve(Paths.get(defaultPath).getFileName()).toString();
+    }
+
+    /**
+     * @return 一个对应于源语言中的临时变量的新 IRVariable, 在这次编译中从 $0 开始依次编号
+     */
+    public IRVariable newTemp() {
+        return IRVariable.temp(tempCount++);
+    }
+
+    /**
+     * 一次预留连续的 count 个临时变量编号, 供拼接以 $0 起编号的 IR 片段时平移编号
+     *
+     * @param count 个数
+     * @return 预留的第一个编号
+     */
+    public int reserveTemps(int count) {
+        final var first = tempCount;
+        tempCount += count;
+        return first;
+    }
+}
@@ -0,0 +1,390 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.asm.OutputFormat;
+import cn.edu.hitsz.compiler.ir.AlgebraicSimplifier;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.LocalValueNumbering;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.ProductionCollector;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.Instrumentation;
+import cn.edu.hitsz.compiler.utils.RiscVSimulator;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * 完整的编译流程: 词法分析, 语法分析与语义分析, IR 生成与模拟执行, 优化, 代码生成
+ * <br>
+ * 码点文件, 语法文件与 LR 分析表在 {@link #load()} 中只读取一次, 之后只被读取不被修改, 可以被任意多次编译共享.
+ * 每次 {@link #compile} 都创建新的 {@link CompilationContext}, 其中的符号表与临时变量编号, 以及观察者与后端都属于这次编译,
+ * 因此同一个 JVM 中多次编译的结果与单独运行时一致, 不同线程也可以同时调用 {@link #compile}.
+ * <br>
+ * 只有 {@code --emit} 选择的文件会被输出, 见 {@link Artifact}.
+ * 开启 {@code --line-info} 时, 前端为 IR 的每条指令记下所属语句的行号, 经过优化与后端的各个 Pass 一直传递到机器指令,
+ * 与后端输出一同写出行号对照表.
+ * <br>
+ * 开启 {@code --incremental} 时, 前端改由所有编译共享的 {@link IncrementalCompiler} 完成, 在服务模式下反复编译同一文件时
+ * 只需重新分析改动过的语句. 同时开启 {@code --parser-stats} 时仍使用完整的前端, 因为热度报告统计的是整个源文件的一次完整分析,
+ * 这样两种模式输出的文件集合相同.
+ */
+public class CompilationPipeline {
+    // 增量模式缓存的语句条数上限
+    private static final int INCREMENTAL_CAPACITY = 4096;
+    private final LRTable lrTable;
+    private final IncrementalCompiler incremental;
+
+    private CompilationPipeline(LRTable lrTable) {
+        this.lrTable = lrTable;
+        this.incremental = new IncrementalCompiler(lrTable, INCREMENTAL_CAPACITY);
+    }
+
+    /**
+     * 读取码点文件, 语法文件与 LR 分析表, 在一个 JVM 中只应调用一次
+     *
+     * @return 共享这些数据的编译流程
+     */
+    public static CompilationPipeline load() {
+        return load(Instrumentation.disabled());
+    }
+
+    /**
+     * 读取码点文件, 语法文件与 LR 分析表, 并将耗时记为 table-load 阶段
+     *
+     * @param instrumentation 记录读取耗时的实例
+     * @return 共享这些数据的编译流程
+     */
+    @SuppressWarnings("try")
+    public static CompilationPipeline load(Instrumentation instrumentation) {
+        try (final var ignored = instrumentation.begin("table-load")) {
+            TokenKind.loadTokenKinds();
+            // 提前触发语法文件的懒加载, 避免第一次编译时才读取
+            GrammarInfo.getBeginProduction();
+
+            // 读取第三方程序构造的 LR 分析表
+            final var lrTable = new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+
+            // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
+            // final var tableGenerator = new TableGenerator();
+            // tableGenerator.run();
+            // final var lrTable = tableGenerator.getTable();
+            // lrTable.dumpTable("data/out/lrTable.csv");
+
+            return new CompilationPipeline(lrTable);
+        }
+    }
+
+    /**
+     * 编译结果
+     *
+     * @param returnValue     IR 模拟执行的返回值, 没有返回值或不需要模拟执行 IR 时为空
+     * @param report          寄存器分配的统计信息, 未开启 {@code --allocation-report} 时为 null
+     * @param instrumentation 这次编译的各阶段统计数据
+     */
+    public record Result(Optional<Integer> returnValue, String report, Instrumentation instrumentation) {
+    }
+
+    /**
+     * 编译一个源文件, 开启 {@code --profile} 时记录各阶段的统计数据
+     *
+     * @param options    编译选项
+     * @param sourcePath 源文件路径
+     * @param outputDir  输出目录, 其中各文件的名字与 {@link FilePathConfig} 中的一致
+     * @return 编译结果
+     */
+    public Result compile(CompilerOptions options, String sourcePath, String outputDir) {
+        final var instrumentation = options.isProfile() ? Instrumentation.enabled() : Instrumentation.disabled();
+        return compile(new CompilationContext(options, sourcePath, outputDir, instrumentation));
+    }
+
+    /**
+     * 按给定的上下文编译一个源文件
+     * <br>
+     * 各阶段记录到上下文的 {@link Instrumentation} 中: lex, parse (其中每个观察者另记为 parse/观察者类名), dump (输出各中间结果),
+     * emulate, optimize, instruction-selection, register-allocation, emission 与 simulate.
+     * 开启 {@code --async-writes} 时各中间结果在后续阶段运行的同时由写入线程写出, 编译返回前等待所有写入完成,
+     * 等待的时间记为 write-barrier 阶段, 任何写入失败都会在此抛出.
+     * 开启 {@code --profile} 时, 编译结束后将统计数据写入输出目录.
+     *
+     * @param context 编译上下文
+     * @return 编译结果
+     */
+    @SuppressWarnings("try")
+    public Result compile(CompilationContext context) {
+        final var options = context.getOptions();
+        final var instrumentation = context.getInstrumentation();
+        FileUtils.createDirectories(context.getOutputDir());
+
+        final Result result;
+        if (options.isAsyncWrites()) {
+            try (final var writes = FileUtils.beginAsyncWrites()) {
+                result = run(context);
+                try (final var ignored = instrumentation.begin("write-barrier")) {
+                    writes.close();
+                }
+            }
+        } else {
+            result = run(context);
+        }
+
+        if (options.isProfile()) {
+            writeProfile(instrumentation, context.outputPath(options.getProfilePath()));
+        }
+        return result;
+    }
+
+    @SuppressWarnings("try")
+    private Result run(CompilationContext context) {
+        final var options = context.getOptions();
+        final var instrumentation = context.getInstrumentation();
+
+        // 增量模式下复用未改动语句的分析结果, 最后一条语句之后还有内容时退回完整编译
+        // 增量的前端不统计语法分析的动作热度, 需要输出热度报告时直接使用完整的前端
+        IncrementalCompiler.Unit unit = null;
+        if (options.isIncremental() && !options.isParserStatistics()) {
+            try (final var ignored = instrumentation.begin("lex")) {
+                unit = incremental.lex(context);
+            }
+        }
+        var instructions = unit != null ? analyzeIncrementally(context, unit) : null;
+        if (instructions == null) {
+            instructions = analyze(context);
+        }
+
+        // 模拟执行 IR 并输出结果
+        Optional<Integer> emulateResult = Optional.empty();
+        if (options.needsEmulation()) {
+            try (final var ignored = instrumentation.begin("emulate")) {
+                emulateResult = IREmulator.load(instructions).execute();
+            }
+        }
+        if (options.emits(Artifact.EMULATE_RESULT)) {
+            try (final var ignored = instrumentation.begin("dump")) {
+                FileUtils.writeFile(context.outputPath(FilePathConfig.EMULATE_RESULT),
+                        emulateResult.map(Objects::toString).orElse("No return value"));
+            }
+        }
+
+        if (!options.needsBackend()) {
+            return new Result(emulateResult, null, instrumentation);
+        }
+
+        // 对 IR 做代数化简, 再做局部值编号消除公共子表达式
+        // 代数化简逐条改写指令, 行号不变; 局部值编号会删除指令, 行号随之调整
+        final List<Instruction> optimizedInstructions;
+        final int[] optimizedLines;
+        try (final var ignored = instrumentation.begin("optimize")) {
+            final var simplifier = new AlgebraicSimplifier();
+            final var valueNumbering = new LocalValueNumbering();
+            optimizedInstructions = valueNumbering.run(simplifier.run(instructions), context.getInstructionLines());
+            optimizedLines = valueNumbering.getLines();
+        }
+
+        // 由 IR 生成汇编或机器码, 指令选择, 寄存器分配与指令发射三个阶段在 AssemblyGenerator 中记录
+        final var asmGenerator = new AssemblyGenerator(context);
+        asmGenerator.loadIR(optimizedInstructions, optimizedLines);
+        asmGenerator.run();
+        // 后端输出与其它中间结果一样记为 dump, emission 只指 AssemblyGenerator 中的指令发射
+        if (options.emits(Artifact.OUTPUT)) {
+            try (final var ignored = instrumentation.begin("dump")) {
+                removeStaleOutputs(options, context.getOutputDir());
+                asmGenerator.dump(context.outputPath(options.getOutputPath()), options.getOutputFormat());
+                if (options.isLineInfo()) {
+                    FileUtils.writeLines(context.outputPath(FilePathConfig.LINE_TABLE_PATH), asmGenerator.getLineTable());
+                }
+            }
+        }
+        String report = null;
+        if (options.isAllocationReport()) {
+            report = "allocator=%s time=%.3fms instructions=%d spill-instructions=%d".formatted(
+                    options.getAllocatorKind(), asmGenerator.getAllocationNanos() / 1e6,
+                    asmGenerator.getInstructionCount(), asmGenerator.getSpillInstructionCount());
+        }
+
+        // 模拟执行机器码, 并与 IR 的模拟执行结果比对
+        if (options.isSimulate()) {
+            final var simulator = RiscVSimulator.load(asmGenerator.encode());
+            final int a0;
+            try (final var ignored = instrumentation.begin("simulate")) {
+                a0 = simulator.execute();
+            }
+            FileUtils.writeLines(context.outputPath(FilePathConfig.SIMULATE_RESULT), List.of(
+                    "a0=" + a0,
+                    "instructions=" + simulator.getInstructionCount(),
+                    "cycles=" + simulator.getCycleCount()));
+            if (emulateResult.isPresent() && emulateResult.get() != a0) {
+                throw new RuntimeException("Simulated a0 %d differs from IR emulation result %d".formatted(a0, emulateResult.get()));
+            }
+        }
+
+        return new Result(emulateResult, report, instrumentation);
+    }
+
+    /**
+     * 完整的前端: 词法分析, 语法分析, 语义分析与 IR 生成, 并输出选择的各阶段结果
+     *
+     * @return 生成的 IR
+     */
+    @SuppressWarnings("try")
+    private List<Instruction> analyze(CompilationContext context) {
+        final var options = context.getOptions();
+        final var instrumentation = context.getInstrumentation();
+        // 符号表由上下文持有, 供各部分使用
+        final var symbolTable = context.getSymbolTable();
+
+        // 词法分析
+        final var lexer = new LexicalAnalyzer(context);
+        try (final var ignored = instrumentation.begin("lex")) {
+            lexer.loadFile(context.getSourcePath());
+            lexer.run();
+        }
+        final var tokens = lexer.getTokens();
+        context.setSourcePositions(lexer.getPositions());
+        context.setTokenSymbols(lexer.getSymbolIds());
+        try (final var ignored = instrumentation.begin("dump")) {
+            if (options.emits(Artifact.TOKENS)) {
+                lexer.dumpTokens(context.outputPath(FilePathConfig.TOKEN_PATH));
+            }
+            if (options.emits(Artifact.OLD_SYMBOL_TABLE)) {
+                symbolTable.dumpTable(context.outputPath(FilePathConfig.OLD_SYMBOL_TABLE));
+            }
+        }
+
+        // 加载 LR 分析驱动程序
+        final var parser = new SyntaxAnalyzer(context);
+        parser.loadTokens(tokens);
+        parser.loadLRTable(lrTable);
+
+        // 加入生成规约列表的 Observer, 只在需要输出规约列表时创建
+        ProductionCollector productionCollector = null;
+        if (options.emits(Artifact.PRODUCTIONS)) {
+            productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
+            parser.registerObserver(productionCollector);
+        }
+
+        // 加入用作语义检查的 Observer
+        final var semanticAnalyzer = new SemanticAnalyzer();
+        parser.registerObserver(semanticAnalyzer);
+
+        // 加入用作 IR 生成的 Observer
+        final var irGenerator = new IRGenerator();
+        parser.registerObserver(irGenerator);
+
+        // 执行语法解析并在解析过程中依次调用各 Observer
+        try (final var ignored = instrumentation.begin("parse")) {
+            parser.run();
+        }
+
+        // 词法分析与语法分析中发现了错误时, 报告全部错误并结束编译
+        context.checkDiagnostics();
+        context.setInstructionLines(irGenerator.getLines());
+
+        // 各 Observer 输出结果
+        try (final var ignored = instrumentation.begin("dump")) {
+            if (productionCollector != null) {
+                productionCollector.dumpToFile(context.outputPath(FilePathConfig.PARSER_PATH));
+            }
+            if (options.emits(Artifact.NEW_SYMBOL_TABLE)) {
+                symbolTable.dumpTable(context.outputPath(FilePathConfig.NEW_SYMBOL_TABLE));
+            }
+            if (options.emits(Artifact.IR)) {
+                irGenerator.dumpIR(context.outputPath(FilePathConfig.INTERMEDIATE_CODE_PATH));
+            }
+            if (context.getParserStatistics() != null) {
+                context.getParserStatistics().dump(context.outputPath(FilePathConfig.PARSER_STATISTICS_PATH));
+            }
+        }
+        return irGenerator.getIR();
+    }
+
+    /**
+     * 增量的前端, 输出与 {@link #analyze} 完全相同. 词法分析阶段包括对改动过的语句的重新词法分析,
+     * 语法分析阶段包括对它们的重新语法分析, 以及所有语句结果的拼接
+     *
+     * @return 生成的 IR, 有语句含语法错误时为 null, 此时应当退回完整的前端
+     */
+    @SuppressWarnings("try")
+    private List<Instruction> analyzeIncrementally(CompilationContext context, IncrementalCompiler.Unit unit) {
+        final var options = context.getOptions();
+        final var instrumentation = context.getInstrumentation();
+        final var symbolTable = context.getSymbolTable();
+        context.setSourcePositions(unit.positions());
+        try (final var ignored = instrumentation.begin("dump")) {
+            if (options.emits(Artifact.TOKENS)) {
+                FileUtils.writeLines(context.outputPath(FilePathConfig.TOKEN_PATH),
+                        unit.tokens().stream().map(Token::toString).toList());
+            }
+            if (options.emits(Artifact.OLD_SYMBOL_TABLE)) {
+                symbolTable.dumpTable(context.outputPath(FilePathConfig.OLD_SYMBOL_TABLE));
+            }
+        }
+
+        final IncrementalCompiler.Analysis analysis;
+        try (final var ignored = instrumentation.begin("parse")) {
+            analysis = unit.analyze(context);
+        }
+        if (analysis == null) {
+            return null;
+        }
+        if (options.isLineInfo()) {
+            context.setInstructionLines(unit.lines(context.getSourcePositions()));
+        }
+        try (final var ignored = instrumentation.begin("dump")) {
+            if (options.emits(Artifact.PRODUCTIONS)) {
+                FileUtils.writeLines(context.outputPath(FilePathConfig.PARSER_PATH),
+                        analysis.productions().stream().map(Production::toString).toList());
+            }
+            if (options.emits(Artifact.NEW_SYMBOL_TABLE)) {
+                symbolTable.dumpTable(context.outputPath(FilePathConfig.NEW_SYMBOL_TABLE));
+            }
+            if (options.emits(Artifact.IR)) {
+                FileUtils.writeLines(context.outputPath(FilePathConfig.INTERMEDIATE_CODE_PATH),
+                        analysis.instructions().stream().map(Instruction::toString).toList());
+            }
+        }
+        return analysis.instructions();
+    }
+
+    /**
+     * 删除输出目录中以前以其它输出格式编译时留下的后端输出, 使输出目录中只有本次所选格式的结果
+     *
+     * @param options   编译选项, 决定本次的输出格式
+     * @param outputDir 输出目录
+     */
+    static void removeStaleOutputs(CompilerOptions options, String outputDir) {
+        for (final var format : OutputFormat.values()) {
+            if (format != options.getOutputFormat()) {
+                final var name = Paths.get(CompilerOptions.getOutputPath(format)).getFileName();
+                FileUtils.deleteIfExists(Paths.get(outputDir).resolve(name).toString());
+            }
+        }
+    }
+
+    /**
+     * 按扩展名以 JSON 或 CSV 格式输出各阶段的统计数据
+     *
+     * @param instrumentation 统计数据
+     * @param path            输出路径
+     */
+    public static void writeProfile(Instrumentation instrumentation, String path) {
+        if (path.endsWith(".csv")) {
+            FileUtils.writeLines(path, instrumentation.toCsv());
+        } else {
+            FileUtils.writeFile(path, instrumentation.toJson());
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.asm.OutputFormat;
+import cn.edu.hitsz.compiler.asm.Register;
+import cn.edu.hitsz.compiler.asm.RegisterAllocator;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 编译器的命令行选项
+ * <br>
+ * 所有选项都是可选的, 不带参数运行时与原先的行为一致.
+ * <ul>
+ *     <li>{@code --extended-registers}: 寄存器分配时除 t0-t6 外还使用 a1-a7 与 s1-s11</li>
+ *     <li>{@code --allocator=linear-scan|graph-coloring}: 寄存器分配算法, 默认为线性扫描</li>
+ *     <li>{@code --allocation-report}: 在标准输出打印寄存器分配耗时, 汇编指令条数与溢出指令条数</li>
+ *     <li>{@code --output-format=text|flat|elf}: 后端输出汇编文本 (默认), 不带头部的机器码或 ELF 可执行文件</li>
+ *     <li>{@code --simulate}: 在进程内模拟执行生成的机器码, 与 IR 模拟执行的结果比对并输出指令条数与周期数</li>
+ *     <li>{@code --server}, {@code --server-port=N}: 以服务模式运行, 从标准输入或本机端口 N 接收编译请求, 见 {@link CompilerServer}</li>
+ *     <li>{@code --batch=DIR|LIST}: 批量编译目录中的所有 .txt 文件或列表文件中的所有文件, 见 {@link BatchCompiler}</li>
+ *     <li>{@code --batch-output=DIR}: 批量编译的输出根目录, 默认为 data/out/batch</li>
+ *     <li>{@code --threads=N}: 批量编译使用的线程数, 默认为可用处理器数</li>
+ *     <li>{@code --profile=json|csv}: 记录各阶段的墙钟时间, CPU 时间与分配字节数, 以 JSON 或 CSV 格式写入输出目录,
+ *     见 {@link cn.edu.hitsz.compiler.utils.Instrumentation}</li>
+ *     <li>{@code --incremental}: 以语句为单位缓存前端的结果, 重复编译时只重新分析改动过的语句, 见 {@link IncrementalCompiler}.
+ *     与 {@code --parser-stats} 同时开启时不生效</li>
+ *     <li>{@code --parser-stats}: 统计 LR 分析表各 (状态, 终结符) 的查询次数, 各产生式的规约次数与最大栈深,
+ *     输出热度报告, 见 {@link cn.edu.hitsz.compiler.parser.ParserStatistics}</li>
+ *     <li>{@code --jfr-parse-sample=N}: JFR 记录时语法分析每移入 N 个词法单元提交一次进度事件, 默认为 256</li>
+ *     <li>{@code --cache-dir=DIR}: 单文件编译时使用目录 DIR 中的编译缓存, 输入与选项都未改变时直接复用上次的输出,
+ *     见 {@link CompilationCache}</li>
+ *     <li>{@code --cache-max-bytes=N}: 编译缓存的总大小上限, 默认为 64 MiB</li>
+ *     <li>{@code --emit=A,B,...}: 只输出列出的文件, 可选 tokens, old-symbols, parser-list, new-symbols, ir, emulate, output
+ *     或 all (默认), 见 {@link Artifact}</li>
+ *     <li>{@code --async-writes}: 各中间结果交给写入线程异步写出, 编译结束前等待所有写入完成,
+ *     见 {@link cn.edu.hitsz.compiler.utils.FileUtils#beginAsyncWrites()}</li>
+ *     <li>{@code --line-info}: 记录每条指令来自哪一行源代码, 在汇编文本中以注释标出, 并输出机器码地址到行号的对照表,
+ *     见 {@link cn.edu.hitsz.compiler.asm.AssemblyGenerator#getLineTable()}</li>
+ * </ul>
+ */
+public final class CompilerOptions {
+    private boolean extendedRegisters = false;
+    private RegisterAllocator.Kind allocatorKind = RegisterAllocator.Kind.LINEAR_SCAN;
+    private boolean allocationReport = false;
+    private OutputFormat outputFormat = OutputFormat.TEXT;
+    private boolean simulate = false;
+    private boolean server = false;
+    // 服务模式监听的端口, -1 表示使用标准输入输出
+    private int serverPort = -1;
+    private String batchInput = null;
+    private String batchOutput = "data/out/batch";
+    private int threads = Runtime.getRuntime().availableProcessors();
+    // 阶段报告的路径, null 表示不记录
+    private String profilePath = null;
+    private int parseSampleInterval = 256;
+    private boolean parserStatistics = false;
+    private boolean incremental = false;
+    // 编译缓存的目录, null 表示不使用缓存
+    private String cacheDirectory = null;
+    private long cacheMaxBytes = 64L << 20;
+    private boolean asyncWrites = false;
+    private boolean lineInfo = false;
+    private Set<Artifact> artifacts = EnumSet.allOf(Artifact.class);
+
+    private CompilerOptions() {
+    }
+
+    /**
+     * @return 全部取默认值的选项
+     */
+    public static CompilerOptions defaults() {
+        return new CompilerOptions();
+    }
+
+    /**
+     * 解析命令行参数
+     *
+     * @param args 命令行参数
+     * @return 解析出的选项
+     * @throws RuntimeException 存在无法识别的参数
+     */
+    public static CompilerOptions parse(String[] args) {
+        final var options = new CompilerOptions();
+        for (final var arg : args) {
+            switch (arg) {
+                case "--extended-registers" -> options.extendedRegisters = true;
+                case "--allocator=linear-scan" -> options.allocatorKind = RegisterAllocator.Kind.LINEAR_SCAN;
+                case "--allocator=graph-coloring" -> options.allocatorKind = RegisterAllocator.Kind.GRAPH_COLORING;
+                case "--allocation-report" -> options.allocationReport = true;
+                case "--output-format=text" -> options.outputFormat = OutputFormat.TEXT;
+                case "--output-format=flat" -> options.outputFormat = OutputFormat.FLAT;
+                case "--output-format=elf" -> options.outputFormat = OutputFormat.ELF;
+                case "--simulate" -> options.simulate = true;
+                case "--server" -> options.server = true;
+                case "--parser-stats" -> options.parserStatistics = true;
+                case "--incremental" -> options.incremental = true;
+                case "--async-writes" -> options.asyncWrites = true;
+                case "--line-info" -> options.lineInfo = true;
+                case "--profile=json" -> options.profilePath = FilePathConfig.PROFILE_JSON_PATH;
+                case "--profile=csv" -> options.profilePath = FilePathConfig.PROFILE_CSV_PATH;
+                default -> {
+                    if (arg.startsWith("--server-port=")) {
+                        options.server = true;
+                        options.serverPort = Integer.parseInt(valueOf(arg));
+                    } else if (arg.startsWith("--batch=")) {
+                        options.batchInput = valueOf(arg);
+                    } else if (arg.startsWith("--batch-output=")) {
+                        options.batchOutput = valueOf(arg);
+                    } else if (arg.startsWith("--jfr-parse-sample=")) {
+                        options.parseSampleInterval = Integer.parseInt(valueOf(arg));
+                        if (options.parseSampleInterval <= 0) {
+                            throw new RuntimeException("Illegal sample interval: " + arg);
+                        }
+                    } else if (arg.startsWith("--emit=")) {
+                        options.artifacts = parseArtifacts(valueOf(arg));
+                    } else if (arg.startsWith("--cache-dir=")) {
+                        options.cacheDirectory = valueOf(arg);
+                    } else if (arg.startsWith("--cache-max-bytes=")) {
+                        options.cacheMaxBytes = Long.parseLong(valueOf(arg));
+                        if (options.cacheMaxBytes < 0) {
+                            throw new RuntimeException("Illegal cache size: " + arg);
+                        }
+                    } else if (arg.startsWith("--threads=")) {
+                        options.threads = Integer.parseInt(valueOf(arg));
+                        if (options.threads <= 0) {
+                            throw new RuntimeException("Illegal thread count: " + arg);
+                        }
+                    } else {
+                        throw new RuntimeException("Unknown option: " + arg);
+                    }
+                }
+            }
+        }
+        return options;
+    }
+
+    private static String valueOf(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    private static Set<Artifact> parseArtifacts(String list) {
+        if (list.equals("all")) {
+            return EnumSet.allOf(Artifact.class);
+        }
+        final var artifacts = EnumSet.noneOf(Artifact.class);
+        for (final var name : list.split(",")) {
+            artifacts.add(Artifact.fromOptionName(name));
+        }
+        return artifacts;
+    }
+
+    /**
+     * @return 寄存器分配所用的寄存器池
+     */
+    public List<Register> getRegisterPool() {
+        return extendedRegisters ? Register.EXTENDED : Register.TEMPORARIES;
+    }
+
+    /**
+     * @return 寄存器分配算法
+     */
+    public RegisterAllocator.Kind getAllocatorKind() {
+        return allocatorKind;
+    }
+
+    /**
+     * @return 是否打印寄存器分配的统计信息
+     */
+    public boolean isAllocationReport() {
+        return allocationReport;
+    }
+
+    /**
+     * @return 是否模拟执行生成的机器码
+     */
+    public boolean isSimulate() {
+        return simulate;
+    }
+
+    /**
+     * @return 是否以服务模式运行
+     */
+    public boolean isServer() {
+        return server;
+    }
+
+    /**
+     * @return 服务模式监听的本机端口, 使用标准输入输出时为 -1
+     */
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * @return 批量编译的输入目录或列表文件, 非批量模式时为 null
+     */
+    public String getBatchInput() {
+        return batchInput;
+    }
+
+    /**
+     * @return 批量编译的输出根目录
+     */
+    public String getBatchOutput() {
+        return batchOutput;
+    }
+
+    /**
+     * @return 批量编译使用的线程数
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return 是否记录并输出各阶段的统计数据
+     */
+    public boolean isProfile() {
+        return profilePath != null;
+    }
+
+    /**
+     * @return 阶段报告的路径, 扩展名决定其格式, 未开启时为 null
+     */
+    public String getProfilePath() {
+        return profilePath;
+    }
+
+    /**
+     * @return 是否以增量模式编译前端
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @return 是否异步写出各中间结果
+     */
+    public boolean isAsyncWrites() {
+        return asyncWrites;
+    }
+
+    /**
+     * @return 是否记录并输出指令对应的源代码行
+     */
+    public boolean isLineInfo() {
+        return lineInfo;
+    }
+
+    /**
+     * @return 是否统计语法分析的动作热度
+     */
+    public boolean isParserStatistics() {
+        return parserStatistics;
+    }
+
+    /**
+     * @return JFR 记录语法分析进度时的采样间隔, 以移入的词法单元个数计
+     */
+    public int getParseSampleInterval() {
+        return parseSampleInterval;
+    }
+
+    /**
+     * @param artifact 输出文件
+     * @return 是否需要输出该文件
+     */
+    public boolean emits(Artifact artifact) {
+        return artifacts.contains(artifact);
+    }
+
+    /**
+     * @return 是否需要模拟执行 IR, 即输出其结果或与机器码的模拟执行结果比对
+     */
+    public boolean needsEmulation() {
+        return emits(Artifact.EMULATE_RESULT) || simulate;
+    }
+
+    /**
+     * @return 是否需要运行优化与后端, 即输出其结果, 模拟执行机器码或打印寄存器分配的统计信息
+     */
+    public boolean needsBackend() {
+        return emits(Artifact.OUTPUT) || simulate || allocationReport;
+    }
+
+    /**
+     * @return 编译缓存的目录, 不使用缓存时为 null
+     */
+    public String getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * @return 编译缓存的总大小上限, 单位为字节
+     */
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    /**
+     * 影响输出文件内容的选项的规范表示, 作为编译缓存键的一部分;
+     * 服务模式, 批量模式, 线程数, JFR 采样间隔与增量模式都不改变输出, 不计入其中
+     *
+     * @return 规范表示
+     */
+    public String getOutputKey() {
+        return "registers=" + getRegisterPool()
+                + ";allocator=" + allocatorKind
+                + ";format=" + outputFormat
+                + ";simulate=" + simulate
+                + ";parser-stats=" + parserStatistics
+                + ";line-info=" + lineInfo
+                + ";emit=" + artifacts;
+    }
+
+    /**
+     * @return 后端的输出格式
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * @return 后端输出文件的路径, 由输出格式决定
+     */
+    public String getOutputPath() {
+        return getOutputPath(outputFormat);
+    }
+
+    /**
+     * @param format 输出格式
+     * @return 该格式的后端输出文件的路径
+     */
+    public static String getOutputPath(OutputFormat format) {
+        return switch (format) {
+            case TEXT -> FilePathConfig.ASSEMBLY_LANGUAGE_PATH;
+            case FLAT -> FilePathConfig.FLAT_BINARY_PATH;
+            case ELF -> FilePathConfig.ELF_PATH;
+        };
+    }
+}
@@ -0,0 +1,96 @@
+package cn.edu.hitsz.compiler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 编译服务, 让 JVM 常驻并复用已经读取的码点文件, 语法文件与 LR 分析表
+ * <br>
+ * 协议以行为单位, 每行一个请求, 各部分以空白分隔 (因此路径中不能含有空白):
+ * <pre>
+ * &lt;源文件路径&gt; &lt;输出目录&gt; [编译选项 ...]
+ * </pre>
+ * 编译选项与命令行相同, 见 {@link CompilerOptions}. 每个请求对应一行响应:
+ * <pre>
+ * ok &lt;IR 模拟执行的返回值, 没有时为 none&gt;
+ * error &lt;错误信息&gt;
+ * </pre>
+ * 寄存器分配的统计信息输出到标准错误, 以免混入响应. 请求按到达顺序逐个处理.
+ */
+public class CompilerServer {
+    private final CompilationPipeline pipeline;
+
+    public CompilerServer(CompilationPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * 开始服务, 直到标准输入结束或进程被终止
+     *
+     * @param port 监听的本机端口, 为 -1 时从标准输入读取请求并向标准输出写入响应
+     */
+    public void serve(int port) {
+        try {
+            if (port < 0) {
+                handle(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                        new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), true));
+                return;
+            }
+
+            // 只监听回环地址, 不接受来自其它主机的请求
+            try (final var serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+                while (true) {
+                    try (final var socket = serverSocket.accept()) {
+                        handle(new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)),
+                                new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true));
+                    } catch (IOException e) {
+                        System.err.println("connection failed: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception in compiler server", e);
+        }
+    }
+
+    private void handle(BufferedReader in, PrintWriter out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            out.println(process(line.trim()));
+        }
+    }
+
+    /**
+     * 处理一个请求
+     *
+     * @param request 请求行
+     * @return 响应行
+     */
+    public String process(String request) {
+        final var words = request.split("\\s+");
+        if (words.length < 2) {
+            return "error expected <source> <output-dir> [options...]";
+        }
+
+        try {
+            final var options = CompilerOptions.parse(Arrays.copyOfRange(words, 2, words.length));
+            final var result = pipeline.compile(options, words[0], words[1]);
+            if (result.report() != null) {
+                System.err.println(result.report());
+            }
+            return "ok " + result.returnValue().map(Object::toString).orElse("none");
+        } catch (RuntimeException e) {
+            return "error " + String.valueOf(e.getMessage()).replace('\n', ' ');
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package cn.edu.hitsz.compiler;
+
+/**
+ * 编译中发现的一个错误
+ * <br>
+ * 词法分析与语法分析在发现错误后都会继续进行, 把错误记入 {@link CompilationContext#report}, 因此一次编译就能报告源文件中的全部错误.
+ * 前端结束时若有错误, 编译流程以包含全部错误的异常结束, 不再输出之后的中间结果.
+ *
+ * @param stage   发现错误的阶段, 如 lexer, parser
+ * @param line    所在行, 从 1 开始, 未知时为 0
+ * @param column  所在列, 从 1 开始, 未知时为 0
+ * @param token   出错的词法单元的下标, 从 0 开始, 与词法单元无关时为 -1. 行列号未知时以它表示位置
+ * @param message 错误信息
+ */
+public record Diagnostic(String stage, int line, int column, int token, String message) {
+    @Override
+    public String toString() {
+        final String position;
+        if (line > 0) {
+            position = "%d:%d".formatted(line, column);
+        } else {
+            position = "token " + token;
+        }
+        return "%s: %s error: %s".formatted(position, stage, message);
+    }
+}
@@ -0,0 +1,427 @@
+package cn.edu.hitsz.compiler;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.SourcePositions;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.ActionObserver;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量编译的前端, 以语句为单位复用词法分析, 语法分析与 IR 生成的结果
+ * <br>
+ * 源语言的程序就是以分号结尾的语句序列 (S_list -> S Semicolon S_list | S Semicolon), 分号只会作为语句的结尾出现,
+ * 且每条语句只做声明或赋值, 其词法单元, 规约出的产生式与生成的 IR 都只取决于语句本身的文本. 因此:
+ * <ol>
+ *     <li>按分号切分源文件, 以去掉首尾空白后的语句文本为键查找缓存, 未命中的语句单独做词法分析</li>
+ *     <li>未命中的语句再单独做语法分析, 记下规约序列片段, 声明的变量与 IR 片段. 单独分析时临时变量从 $0 起编号</li>
+ *     <li>按语句顺序拼接: 规约序列为各片段之后接上一次 S_list -> S Semicolon, n - 1 次 S_list -> S Semicolon S_list
+ *     与起始产生式; IR 片段中的临时变量整体平移到 {@link CompilationContext#reserveTemps} 预留的编号上,
+ *     因此编号与完整编译时完全一致</li>
+ * </ol>
+ * 缓存的词法单元位置相对于去掉首尾空白后的语句文本, 每次编译按语句在源文件中的起始偏移量平移, 因此语句移动了位置也能命中.
+ * <br>
+ * 语句文本本身就是缓存的键, 由 {@link String#hashCode()} 散列, 以 equals 比较, 不会因散列冲突而误用.
+ * 缓存按最近最少使用淘汰, 与文件无关, 不同文件中相同的语句也能共享. 一次重编译中需要重新分析的只有改动过的语句,
+ * 其余工作只是线性的查表与拼接.
+ * <br>
+ * 含有词法或语法错误的语句不参与拼接: 此时退回完整编译, 以给出与完整编译相同的错误与位置.
+ * <br>
+ * 本类可以被多个线程共享. 增量模式下不统计语法分析的动作热度, 开启 {@code --parser-stats} 时 {@link CompilationPipeline} 不使用本类.
+ */
+public class IncrementalCompiler {
+    // 语法中 S_list -> S Semicolon S_list 的编号
+    private static final int STATEMENT_LIST = 2;
+
+    private final LRTable lrTable;
+    private final int capacity;
+    private final Map<String, Statement> cache;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param lrTable  LR 分析表
+     * @param capacity 缓存的语句条数上限
+     */
+    public IncrementalCompiler(LRTable lrTable, int capacity) {
+        this.lrTable = lrTable;
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+                return size() > IncrementalCompiler.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 切分上下文中的源文件, 取出或分析每条语句的词法单元, 并将其中的标识符按出现顺序加入上下文的符号表
+     *
+     * @param context 编译上下文
+     * @return 切分结果; 没有语句, 最后一个分号之后还有非空白内容或有语句含词法错误时返回 null,
+     * 此时应当退回完整编译以给出相同的错误
+     */
+    public Unit lex(CompilationContext context) {
+        final var source = FileUtils.readFile(context.getSourcePath());
+        final var statements = new ArrayList<Statement>();
+        final var starts = new ArrayList<Integer>();
+        var begin = 0;
+        for (int end = source.indexOf(';'); end >= 0; end = source.indexOf(';', begin)) {
+            var start = begin;
+            while (Character.isWhitespace(source.charAt(start))) {
+                start++;
+            }
+            statements.add(lookup(source.substring(start, end + 1).strip()));
+            starts.add(start);
+            begin = end + 1;
+        }
+        if (statements.isEmpty() || !source.substring(begin).isBlank()
+                || statements.stream().anyMatch(statement -> statement.erroneous)) {
+            return null;
+        }
+
+        final var symbolTable = context.getSymbolTable();
+        for (final var statement : statements) {
+            for (final var token : statement.tokens) {
+                if (token.getKindId().equals("id")) {
+                    symbolTable.getOrAdd(token.getText(), 0, token.getText().length());
+                }
+            }
+        }
+        return new Unit(statements, source, starts);
+    }
+
+    private Statement lookup(String text) {
+        synchronized (cache) {
+            final var cached = cache.get(text);
+            if (cached != null) {
+                hitCount++;
+                return cached;
+            }
+            missCount++;
+        }
+
+        final var context = statementContext();
+        final var lexer = new LexicalAnalyzer(context);
+        lexer.loadSource(text);
+        lexer.run();
+        final var tokens = new ArrayList<Token>();
+        for (final var token : lexer.getTokens()) {
+            if (!token.getKindId().equals("$")) {
+                tokens.add(token);
+            }
+        }
+        final var positions = lexer.getPositions();
+        final var offsets = new int[tokens.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = positions.offset(i);
+        }
+
+        final var statement = new Statement(List.copyOf(tokens), offsets, !context.getDiagnostics().isEmpty());
+        synchronized (cache) {
+            // 别的线程可能同时分析了同一条语句, 以先放入的为准
+            final var existing = cache.putIfAbsent(text, statement);
+            return existing != null ? existing : statement;
+        }
+    }
+
+    /**
+     * @return 缓存命中的语句条数
+     */
+    public long getHitCount() {
+        synchronized (cache) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * @return 缓存未命中, 即重新分析的语句条数
+     */
+    public long getMissCount() {
+        synchronized (cache) {
+            return missCount;
+        }
+    }
+
+    private static CompilationContext statementContext() {
+        return new CompilationContext(CompilerOptions.defaults(), "", "");
+    }
+
+    /**
+     * 一次编译中按顺序排列的语句
+     */
+    public final class Unit {
+        private final List<Statement> statements;
+        private final String source;
+        // 各语句首个非空白字符在源文件中的偏移量
+        private final List<Integer> starts;
+
+        private Unit(List<Statement> statements, String source, List<Integer> starts) {
+            this.statements = statements;
+            this.source = source;
+            this.starts = starts;
+        }
+
+        /**
+         * @return 整个源文件中各词法单元的位置, 下标与 {@link #tokens()} 一一对应
+         */
+        public SourcePositions positions() {
+            var count = 1;
+            for (final var statement : statements) {
+                count += statement.offsets.length;
+            }
+            final var offsets = new int[count];
+            var index = 0;
+            for (int i = 0; i < statements.size(); i++) {
+                final var start = starts.get(i);
+                for (final var offset : statements.get(i).offsets) {
+                    offsets[index++] = start + offset;
+                }
+            }
+            offsets[index] = source.length();
+            return new SourcePositions(source, offsets, count);
+        }
+
+        /**
+         * 与完整的前端中 {@link IRGenerator#getLines()} 的结果相同, 每条语句的指令都取该语句第一个词法单元所在的行
+         *
+         * @param positions {@link #positions()} 的结果
+         * @return {@link #analyze} 拼接出的 IR 中各条指令的行号, 须在 {@link #analyze} 成功之后调用
+         */
+        public int[] lines(SourcePositions positions) {
+            var count = 0;
+            for (final var statement : statements) {
+                count += statement.instructions.size();
+            }
+            final var lines = new int[count];
+            var index = 0;
+            var token = 0;
+            for (final var statement : statements) {
+                final var size = statement.instructions.size();
+                Arrays.fill(lines, index, index + size, positions.line(positions.offset(token)));
+                index += size;
+                token += statement.tokens.size();
+            }
+            return lines;
+        }
+
+        /**
+         * @return 整个源文件的词法单元, 以 EOF 结尾
+         */
+        public List<Token> tokens() {
+            final var tokens = new ArrayList<Token>();
+            for (final var statement : statements) {
+                tokens.addAll(statement.tokens);
+            }
+            tokens.add(Token.eof());
+            return tokens;
+        }
+
+        /**
+         * 分析尚未分析过的语句, 在上下文的符号表中登记各语句的声明, 并拼接出整个源文件的规约序列与 IR
+         *
+         * @param context 编译上下文, 与 {@link #lex} 时的相同
+         * @return 拼接结果; 有语句含语法错误时返回 null, 此时上下文除符号表中的标识符外未被改动, 应当退回完整编译
+         */
+        public Analysis analyze(CompilationContext context) {
+            for (final var statement : statements) {
+                statement.ensureAnalyzed(lrTable);
+                if (statement.erroneous) {
+                    return null;
+                }
+            }
+
+            final var symbolTable = context.getSymbolTable();
+            final var productions = new ArrayList<Production>();
+            final var instructions = new ArrayList<Instruction>();
+            Production lastStatement = null;
+            for (final var statement : statements) {
+                productions.addAll(statement.productions);
+                lastStatement = statement.listEnd;
+
+                for (int i = 0; i < statement.declaredNames.size(); i++) {
+                    final var id = symbolTable.find(statement.declaredNames.get(i));
+                    symbolTable.get(id).setType(statement.declaredTypes.get(i));
+                }
+
+                instructions.addAll(statement.instructionsAt(context.reserveTemps(statement.tempCount)));
+            }
+
+            productions.add(lastStatement);
+            final var statementList = GrammarInfo.getProductionsInOrder().stream()
+                    .filter(production -> production.index() == STATEMENT_LIST).findFirst().orElseThrow();
+            for (int i = 1; i < statements.size(); i++) {
+                productions.add(statementList);
+            }
+            productions.add(GrammarInfo.getBeginProduction());
+            return new Analysis(productions, instructions);
+        }
+    }
+
+    /**
+     * @param productions  规约出的产生式, 与 ProductionCollector 的结果一致
+     * @param instructions 生成的 IR
+     */
+    public record Analysis(List<Production> productions, List<Instruction> instructions) {
+    }
+
+    private static Instruction renumber(Instruction instruction, int offset) {
+        return switch (instruction.getKind()) {
+            case ADD -> Instruction.createAdd(renumber(instruction.getResult(), offset),
+                    renumber(instruction.getLHS(), offset), renumber(instruction.getRHS(), offset));
+            case SUB -> Instruction.createSub(renumber(instruction.getResult(), offset),
+                    renumber(instruction.getLHS(), offset), renumber(instruction.getRHS(), offset));
+            case MUL -> Instruction.createMul(renumber(instruction.getResult(), offset),
+                    renumber(instruction.getLHS(), offset), renumber(instruction.getRHS(), offset));
+            case MOV -> Instruction.createMov(renumber(instruction.getResult(), offset),
+                    renumber(instruction.getFrom(), offset));
+            case RET -> Instruction.createRet(renumber(instruction.getReturnValue(), offset));
+        };
+    }
+
+    private static <T extends IRValue> T renumber(T value, int offset) {
+        if (value instanceof IRVariable variable && variable.isTemp()) {
+            @SuppressWarnings("unchecked") final var temp = (T) IRVariable.temp(Integer.parseInt(variable.getName().substring(1)) + offset);
+            return temp;
+        }
+        return value;
+    }
+
+    /**
+     * 一条语句的缓存结果. 词法单元在创建时就已确定, 其余部分在第一次需要时单独对这条语句做语法分析得到
+     */
+    private static final class Statement {
+        private final List<Token> tokens;
+        // 各词法单元相对于语句文本开头的偏移量
+        private final int[] offsets;
+        // 含有词法错误, 或在分析之后发现含有语法错误
+        private boolean erroneous;
+        private List<Production> productions;
+        private Production listEnd;
+        private List<String> declaredNames;
+        private List<SourceCodeType> declaredTypes;
+        private List<Instruction> instructions;
+        private int tempCount;
+        // 最近一次平移的结果, 改动之前与之后临时变量个数不变的语句在重编译时编号不变, 可以直接复用
+        private int lastOffset = 0;
+        private List<Instruction> lastInstructions;
+
+        private Statement(List<Token> tokens, int[] offsets, boolean erroneous) {
+            this.tokens = tokens;
+            this.offsets = offsets;
+            this.erroneous = erroneous;
+        }
+
+        private synchronized void ensureAnalyzed(LRTable lrTable) {
+            if (productions != null) {
+                return;
+            }
+
+            final var context = statementContext();
+            final var symbolTable = context.getSymbolTable();
+            // 最后一个元素对应 EOF
+            final var symbols = new int[tokens.size() + 1];
+            for (int i = 0; i < symbols.length; i++) {
+                final var token = i < tokens.size() ? tokens.get(i) : null;
+                symbols[i] = token != null && token.getKindId().equals("id")
+                        ? symbolTable.getOrAdd(token.getText(), 0, token.getText().length()) : -1;
+            }
+            context.setTokenSymbols(symbols);
+
+            final var parser = new SyntaxAnalyzer(context);
+            final var statementTokens = new ArrayList<>(tokens);
+            statementTokens.add(Token.eof());
+            parser.loadTokens(statementTokens);
+            parser.loadLRTable(lrTable);
+            final var trace = new TraceCollector();
+            parser.registerObserver(trace);
+            parser.registerObserver(new SemanticAnalyzer());
+            final var irGenerator = new IRGenerator();
+            parser.registerObserver(irGenerator);
+            parser.run();
+            if (!context.getDiagnostics().isEmpty()) {
+                erroneous = true;
+                productions = List.of();
+                return;
+            }
+
+            // 单独分析一条语句时, 最后一次规约总是 S_list -> S Semicolon, 拼接时只在整个源文件的末尾出现一次
+            final var reduced = trace.reduced;
+            final var names = new ArrayList<String>();
+            final var types = new ArrayList<SourceCodeType>();
+            for (int id = 0; id < symbolTable.size(); id++) {
+                final var entry = symbolTable.get(id);
+                if (entry.getType() != null) {
+                    names.add(entry.getText());
+                    types.add(entry.getType());
+                }
+            }
+
+            this.listEnd = reduced.get(reduced.size() - 1);
+            this.declaredNames = names;
+            this.declaredTypes = types;
+            this.instructions = List.copyOf(irGenerator.getIR());
+            // 预留 0 个编号即得到已分配的临时变量个数
+            this.tempCount = context.reserveTemps(0);
+            this.lastInstructions = instructions;
+            this.productions = List.copyOf(reduced.subList(0, reduced.size() - 1));
+        }
+
+        /**
+         * @param offset 第一个临时变量的编号
+         * @return 临时变量从 offset 起编号的 IR 片段
+         */
+        private synchronized List<Instruction> instructionsAt(int offset) {
+            if (offset != lastOffset) {
+                final var renumbered = new ArrayList<Instruction>(instructions.size());
+                for (final var instruction : instructions) {
+                    renumbered.add(renumber(instruction, offset));
+                }
+                lastOffset = offset;
+                lastInstructions = renumbered;
+            }
+            return lastInstructions;
+        }
+    }
+
+    /**
+     * 记录规约序列, 与 ProductionCollector 相同但不在接受时追加起始产生式
+     */
+    private static final class TraceCollector implements ActionObserver {
+        private final List<Production> reduced = new ArrayList<>();
+
+        @Override
+        public void whenShift(Status currentStatus, Token currentToken) {
+        }
+
+        @Override
+        public void whenReduce(Status currentStatus, Production production) {
+            reduced.add(production);
+        }
+
+        @Override
+        public void whenAccept(Status currentStatus) {
+        }
+
+        @Override
+        public void setSymbolTable(NumberedSymbolTable table) {
+        }
+    }
+}
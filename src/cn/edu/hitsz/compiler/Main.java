@@ -1,80 +1,60 @@
 package cn.edu.hitsz.compiler;
 
-import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
-import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
-import cn.edu.hitsz.compiler.lexer.TokenKind;
-import cn.edu.hitsz.compiler.parser.IRGenerator;
-import cn.edu.hitsz.compiler.parser.ProductionCollector;
-import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
-import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
-import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
-import cn.edu.hitsz.compiler.parser.table.TableLoader;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
-import cn.edu.hitsz.compiler.utils.FileUtils;
-import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.Instrumentation;
 
-import java.util.Objects;
+import java.nio.file.Paths;
 
 public class Main {
     public static void main(String[] args) {
-        // 构建符号表以供各部分使用
-        TokenKind.loadTokenKinds();
-        final var symbolTable = new SymbolTable();
-
-        // 词法分析
-        final var lexer = new LexicalAnalyzer(symbolTable);
-        lexer.loadFile(FilePathConfig.SRC_CODE_PATH);
-        lexer.run();
-        lexer.dumpTokens(FilePathConfig.TOKEN_PATH);
-        final var tokens = lexer.getTokens();
-        symbolTable.dumpTable(FilePathConfig.OLD_SYMBOL_TABLE);
-
-        // 读取第三方程序构造的 LR 分析表
-        final var tableLoader = new TableLoader();
-        final var lrTable = tableLoader.load(FilePathConfig.LR1_TABLE_PATH);
-
-        // // 或使用框架自带部分直接从 grammar.txt 构造 LR 分析表
-        // final var tableGenerator = new TableGenerator();
-        // tableGenerator.run();
-        // final var lrTable = tableGenerator.getTable();
-        // lrTable.dumpTable("data/out/lrTable.csv");
-
-        // 加载 LR 分析驱动程序
-        final var parser = new SyntaxAnalyzer(symbolTable);
-        parser.loadTokens(tokens);
-        parser.loadLRTable(lrTable);
-
-        // 加入生成规约列表的 Observer
-        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
-        parser.registerObserver(productionCollector);
-
-        // 加入用作语义检查的 Observer
-        final var semanticAnalyzer = new SemanticAnalyzer();
-        parser.registerObserver(semanticAnalyzer);
-
-        // 加入用作 IR 生成的 Observer
-        final var irGenerator = new IRGenerator();
-        parser.registerObserver(irGenerator);
-
-        // 执行语法解析并在解析过程中依次调用各 Observer
-        parser.run();
-
-        // 各 Observer 输出结果
-        productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
-
-        symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
-        irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
-
-        // 模拟执行 IR 并输出结果
-        final var emulator = IREmulator.load(instructions);
-        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
-
-        // 由 IR 生成汇编
-        final var asmGenerator = new AssemblyGenerator();
-        asmGenerator.loadIR(instructions);
-        asmGenerator.run();
-        asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
+        final var options = CompilerOptions.parse(args);
+        final var outputDir = Paths.get(FilePathConfig.TOKEN_PATH).getParent().toString();
+
+        // 单文件编译命中缓存时直接复制上次的输出, 不读取 LR 分析表
+        CompilationCache cache = null;
+        String cacheKey = null;
+        if (options.getCacheDirectory() != null && !options.isServer() && options.getBatchInput() == null
+                && CompilationCache.isCacheable(options)) {
+            cacheKey = CompilationCache.key(options, FilePathConfig.SRC_CODE_PATH);
+            if (cacheKey != null) {
+                cache = new CompilationCache(options.getCacheDirectory(), options.getCacheMaxBytes());
+                if (cache.restore(cacheKey, outputDir)) {
+                    if (options.emits(Artifact.OUTPUT)) {
+                        CompilationPipeline.removeStaleOutputs(options, outputDir);
+                    }
+                    return;
+                }
+            }
+        }
+
+        // 读取码点文件, 语法文件与 LR 分析表, 开启 --profile 时读取耗时也计入单文件编译的报告
+        final var instrumentation = options.isProfile() ? Instrumentation.enabled() : Instrumentation.disabled();
+        final var pipeline = CompilationPipeline.load(instrumentation);
+
+        // 服务模式: 保持 JVM 常驻, 反复接收编译请求
+        if (options.isServer()) {
+            new CompilerServer(pipeline).serve(options.getServerPort());
+            return;
+        }
+
+        // 批量模式: 并行编译多个源文件
+        if (options.getBatchInput() != null) {
+            final var sources = BatchCompiler.listSources(options.getBatchInput());
+            final var failed = new BatchCompiler(pipeline, options)
+                    .run(sources, options.getBatchOutput(), options.getThreads());
+            if (failed > 0) {
+                System.exit(1);
+            }
+            return;
+        }
+
+        final var result = pipeline.compile(
+                new CompilationContext(options, FilePathConfig.SRC_CODE_PATH, outputDir, instrumentation));
+        if (result.report() != null) {
+            System.out.println(result.report());
+        }
+        if (cache != null) {
+            cache.store(cacheKey, options, outputDir);
+        }
     }
 }
@@ -1,9 +1,10 @@
 package cn.edu.hitsz.compiler.asm;
 
-import cn.edu.hitsz.compiler.ir.IRImmediate;
-import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.Instrumentation;
+import cn.edu.hitsz.compiler.utils.LineNumbers;
 
 import java.util.*;
 
@@ -19,15 +20,65 @@ import java.util.*;
  * <br>
  * 为保证实现上的自由, 框架中并未对后端提供基建, 在具体实现时可自行设计相关数据结构.
  *
+ * 本实现分为以下几步, 汇编文本只在最后一步才生成:
+ * <ol>
+ *     <li>{@link InstructionSelector} 将中间代码翻译为使用虚拟寄存器的 {@link MachineInstruction}</li>
+ *     <li>{@link RegisterAllocator} 为虚拟寄存器分配物理寄存器, 本类将分配结果代回并插入溢出代码与序言尾声</li>
+ *     <li>{@link PeepholeOptimizer} 对只含物理寄存器的机器指令做窥孔优化</li>
+ *     <li>将机器指令格式化为汇编文本, 或由 {@link InstructionEncoder} 直接编码为机器码</li>
+ * </ol>
+ * 给出了中间代码的行号时, 每一步都同时维护与指令列表平行的行号数组, 最终得到每条机器指令来自哪一行源代码,
+ * 见 {@link #getLineTable()}. 没有行号时各步只多一次判空.
+ *
  * @see AssemblyGenerator#run() 代码生成与寄存器分配
+ * @see RegisterAllocator 寄存器分配
  */
 public class AssemblyGenerator {
-    private static final int regNum = 7;
+    // 栈上每个溢出槽位的字节数
+    private static final int SLOT_SIZE = 4;
+    private static final int SP = MachineInstruction.physical(Register.SP);
     private final List<String> assembly = new ArrayList<>();
-    private final Map<Integer, IRVariable> regIRMap = new HashMap<>();
-    public int index = 0;
-    private List<Instruction> originInstructions = new ArrayList<>();
-    private List<IRCount> irVariableList = new ArrayList<>();
+    private final InstructionSelector selector = new InstructionSelector();
+    private final PeepholeOptimizer peephole = new PeepholeOptimizer();
+    // 指令选择的结果, 使用虚拟寄存器
+    private List<MachineInstruction> selected = new ArrayList<>();
+    // 寄存器分配与窥孔优化之后的结果, 只含物理寄存器
+    private List<MachineInstruction> machineCode = new ArrayList<>();
+    // 与 selected, machineCode 平行的行号, 序言尾声与未给出行号时分别为 0 与 null
+    private int[] selectedLines;
+    private int[] lines;
+    private List<Register> registerPool = Register.TEMPORARIES;
+    private RegisterAllocator.Kind allocatorKind = RegisterAllocator.Kind.LINEAR_SCAN;
+    private LiveIntervals liveIntervals;
+    private Register[] registers;
+    // 虚拟寄存器编号 -> 溢出槽位在栈帧中的偏移, 未溢出时为 -1
+    private int[] stackOffsets;
+    // 读写溢出变量时使用的暂存寄存器, 仅在发生溢出时从分配池中让出
+    private List<Register> scratch = List.of();
+    private int spillInstructionCount = 0;
+    private long allocationNanos = 0;
+    private Instrumentation instrumentation = Instrumentation.disabled();
+    // 物理寄存器编号 -> 该寄存器中恰好保存着的溢出虚拟寄存器的值 (-1 表示没有), 只要寄存器未被覆盖, 再次读取时就不必访存
+    private final int[] spilledValues = new int[32];
+    // 当前指令已经占用的暂存寄存器
+    private int scratchInUse = 0;
+
+    /**
+     * 使用默认的寄存器池与分配算法
+     */
+    public AssemblyGenerator() {
+    }
+
+    /**
+     * 按编译上下文中的选项设置寄存器池与分配算法, 并将指令选择, 寄存器分配与指令发射三个阶段记录到上下文的 {@link Instrumentation} 中
+     *
+     * @param context 编译上下文
+     */
+    public AssemblyGenerator(CompilationContext context) {
+        setRegisterPool(context.getOptions().getRegisterPool());
+        setAllocatorKind(context.getOptions().getAllocatorKind());
+        this.instrumentation = context.getInstrumentation();
+    }
 
     /**
      * 加载前端提供的中间代码
@@ -38,114 +89,270 @@ public class AssemblyGenerator {
      * @param originInstructions 前端提供的中间代码
      */
     public void loadIR(List<Instruction> originInstructions) {
-        int count = 0;
-        for (var instruction : originInstructions) {
-            switch (instruction.getKind()) {
-                case ADD -> {
-                    count++;
-                    boolean isLHSImm = instruction.getLHS().isImmediate();
-                    boolean isRHSImm = instruction.getRHS().isImmediate();
-                    if (isLHSImm | isRHSImm) {
-                        if (isLHSImm) {
-                            irVariableList.add(new IRCount((IRVariable) instruction.getRHS(), count));
-                            irVariableList.add(new IRCount(instruction.getResult(), count));
-                        } else {
-                            irVariableList.add(new IRCount((IRVariable) instruction.getLHS(), count));
-                            irVariableList.add(new IRCount(instruction.getResult(), count));
-                        }
-                    } else {
-                        irVariableList.add(new IRCount((IRVariable) instruction.getRHS(), count));
-                        irVariableList.add(new IRCount((IRVariable) instruction.getLHS(), count));
-                        irVariableList.add(new IRCount(instruction.getResult(), count));
-                    }
-                }
-                case MOV -> {
-                    count++;
-                    boolean isImm = instruction.getFrom().isImmediate();
-                    irVariableList.add(new IRCount(instruction.getResult(), count));
-                    if (!isImm) {
-                        irVariableList.add(new IRCount((IRVariable) instruction.getFrom(), count));
-                    }
-                }
-                case MUL, SUB -> {
-                    count++;
-                    boolean isLHSImm = instruction.getLHS().isImmediate();
-                    boolean isRHSImm = instruction.getRHS().isImmediate();
-                    if (isLHSImm | isRHSImm) {
-                        count++;
-                        if (isLHSImm) {
-                            irVariableList.add(new IRCount(IRVariable.temp(), count));
-                            irVariableList.add(new IRCount((IRVariable) instruction.getRHS(), count));
-                            irVariableList.add(new IRCount(instruction.getResult(), count));
-                        } else {
-                            irVariableList.add(new IRCount(IRVariable.temp(), count));
-                            irVariableList.add(new IRCount((IRVariable) instruction.getLHS(), count));
-                            irVariableList.add(new IRCount(instruction.getResult(), count));
-                        }
-                    } else {
-                        irVariableList.add(new IRCount((IRVariable) instruction.getRHS(), count));
-                        irVariableList.add(new IRCount((IRVariable) instruction.getLHS(), count));
-                        irVariableList.add(new IRCount(instruction.getResult(), count));
-                    }
-                }
-                case RET -> {
-                    count++;
-                    irVariableList.add(new IRCount((IRVariable) instruction.getReturnValue(), count));
+        loadIR(originInstructions, null);
+    }
+
+    /**
+     * 加载前端提供的中间代码及其各条指令的行号, 行号随之传递到生成的每条机器指令
+     *
+     * @param originInstructions 前端提供的中间代码
+     * @param lines              各条中间代码所属语句所在的行, 为 null 时不记录
+     */
+    @SuppressWarnings("try")
+    public void loadIR(List<Instruction> originInstructions, int[] lines) {
+        try (final var ignored = instrumentation.begin("instruction-selection")) {
+            this.selected = selector.run(originInstructions, lines);
+            this.selectedLines = selector.getLines();
+            this.liveIntervals = LiveIntervals.compute(selected, selector.getVirtualRegisterCount());
+        }
+    }
+
+    /**
+     * 设置可供寄存器分配的寄存器池, 默认为 t0-t6
+     *
+     * @param registerPool 寄存器池, 如 {@link Register#TEMPORARIES} 或 {@link Register#EXTENDED}
+     */
+    public void setRegisterPool(List<Register> registerPool) {
+        this.registerPool = registerPool;
+    }
+
+    /**
+     * 设置寄存器分配算法, 默认为线性扫描
+     *
+     * @param allocatorKind 寄存器分配算法
+     */
+    public void setAllocatorKind(RegisterAllocator.Kind allocatorKind) {
+        this.allocatorKind = allocatorKind;
+    }
+
+    /**
+     * 为各区间分配寄存器. 若发生了溢出, 则从寄存器池中让出两个调用者保存的寄存器作为暂存寄存器, 重新分配一次.
+     */
+    private void allocateRegisters() {
+        final var begin = System.nanoTime();
+        var allocator = allocatorKind.create(registerPool);
+        registers = allocator.allocate(selected, liveIntervals);
+        scratch = List.of();
+
+        if (allocator.getSpillCount() > 0) {
+            final var pool = new ArrayList<>(registerPool);
+            final var reserved = new ArrayList<Register>();
+            for (int i = pool.size() - 1; i >= 0 && reserved.size() < 2; i--) {
+                if (!pool.get(i).isCalleeSaved()) {
+                    reserved.add(pool.remove(i));
                 }
             }
-        }
-        this.originInstructions = originInstructions;
-    }
-
-    public void minIRList(List<IRCount> irVariableList) {
-        List<IRVariable> irList = new ArrayList<>();
-        List<Integer> indexList = new ArrayList<>();
-        List<IRCount> minList = new ArrayList<>();
-        Collections.reverse(irVariableList);
-        for (var ir : irVariableList) {
-            if (!irList.contains(ir.irVariable)) {
-                irList.add(ir.irVariable);
-                indexList.add(ir.index);
+            if (reserved.size() < 2 || pool.isEmpty()) {
+                throw new RuntimeException("Reg Error");
             }
+
+            scratch = reserved;
+            allocator = allocatorKind.create(pool);
+            registers = allocator.allocate(selected, liveIntervals);
         }
-        for (int i = 0; i < irList.size(); i++) {
-            minList.add(new IRCount(irList.get(i), indexList.get(i)));
+        allocationNanos = System.nanoTime() - begin;
+    }
+
+    /**
+     * 为溢出的区间分配栈上的槽位, 互不相交的区间共享同一个槽位
+     *
+     * @return 使用的槽位数
+     */
+    private int assignStackSlots() {
+        stackOffsets = new int[liveIntervals.size()];
+        Arrays.fill(stackOffsets, -1);
+        final var slotEnds = new ArrayList<Integer>();
+        for (final var id : liveIntervals.orderByStart()) {
+            if (registers[id] != null) {
+                continue;
+            }
+
+            var slot = 0;
+            while (slot < slotEnds.size() && slotEnds.get(slot) >= liveIntervals.start(id)) {
+                slot++;
+            }
+            if (slot == slotEnds.size()) {
+                slotEnds.add(liveIntervals.end(id));
+            } else {
+                slotEnds.set(slot, liveIntervals.end(id));
+            }
+            stackOffsets[id] = slot * SLOT_SIZE;
         }
-        this.irVariableList = minList;
+        return slotEnds.size();
     }
 
-    /*
-     *  寄存器查找算法，寻找IRVariable对应寄存器
-     *  HashMap大小为2的幂次，用循环限制大小
+    /**
+     * 获得读取操作数所用的物理寄存器, 溢出的虚拟寄存器会先从栈上载入到暂存寄存器中
      */
-    public int getReg(IRVariable irVariable) throws RuntimeException {
-        minIRList(irVariableList);
-        if (regIRMap.containsValue(irVariable)) {
-            for (int getKey = 0; getKey < regNum; getKey++) {
-                if (regIRMap.get(getKey).equals(irVariable)) return getKey;
+    private int use(int operand) {
+        if (!MachineInstruction.isVirtual(operand)) {
+            return operand;
+        }
+        if (registers[operand] != null) {
+            return MachineInstruction.physical(registers[operand]);
+        }
+
+        final var cached = cachedIn(operand);
+        if (cached >= 0) {
+            final var index = scratch.indexOf(Register.fromNumber(cached));
+            if (index >= 0) {
+                scratchInUse |= 1 << index;
             }
-        } else {
-            for (int getKey = 0; getKey < regNum; getKey++) {
-                if (!regIRMap.containsKey(getKey)) {
-                    regIRMap.put(getKey, irVariable);
-                    return getKey;
-                }
+            return ~cached;
+        }
+
+        final var index = (scratchInUse & 1) == 0 ? 0 : 1;
+        final var reg = MachineInstruction.physical(scratch.get(index));
+        scratchInUse |= 1 << index;
+        accessFrame(Opcode.LW, reg, stackOffsets[operand], true);
+        spilledValues[~reg] = operand;
+        return reg;
+    }
+
+    /**
+     * 获得写入操作数所用的物理寄存器, 溢出的虚拟寄存器写入第一个暂存寄存器, 由 {@link #written} 写回栈上
+     */
+    private int result(int operand) {
+        if (!MachineInstruction.isVirtual(operand)) {
+            return operand;
+        }
+        final var reg = registers[operand];
+        return MachineInstruction.physical(reg != null ? reg : scratch.get(0));
+    }
+
+    private boolean isSpilled(int operand) {
+        return MachineInstruction.isVirtual(operand) && registers[operand] == null;
+    }
+
+    /**
+     * @return 当前保存着该溢出虚拟寄存器的值的物理寄存器编号, 没有时为 -1
+     */
+    private int cachedIn(int operand) {
+        for (int number = 0; number < spilledValues.length; number++) {
+            if (spilledValues[number] == operand) {
+                return number;
             }
-            for (var ir : irVariableList) {
-                if (index > ir.index) {
-                    for (int getKey = 0; getKey < regNum; getKey++) {
-                        if (regIRMap.get(getKey).equals(ir.irVariable)) {
-                            regIRMap.remove(getKey, ir.irVariable);
-                            regIRMap.put(getKey, irVariable);
-                            irVariableList.remove(ir);
-                            return getKey;
-                        }
-                    }
-                }
+        }
+        return -1;
+    }
+
+    /**
+     * 在物理寄存器 reg 被写入 operand 的新值之后调用, 溢出的虚拟寄存器需要写回栈上
+     */
+    private void written(int reg, int operand) {
+        if (isSpilled(operand)) {
+            store(reg, operand);
+        }
+    }
+
+    private void store(int reg, int operand) {
+        accessFrame(Opcode.SW, reg, stackOffsets[operand], true);
+        // 变量的值已经改变, 其它寄存器中的旧值作废
+        for (int number = 0; number < spilledValues.length; number++) {
+            if (spilledValues[number] == operand) {
+                spilledValues[number] = -1;
             }
         }
+        spilledValues[~reg] = operand;
+    }
+
+    /**
+     * 调整栈指针. 超出 12 位立即数时先将调整量载入暂存寄存器再相加, 此时栈帧中必然有溢出槽位, 暂存寄存器一定存在;
+     * 序言之前与尾声之后暂存寄存器都不持有任何值
+     */
+    private void adjustStack(int amount) {
+        if (InstructionSelector.isImm12(amount)) {
+            append(MachineInstruction.immediate(Opcode.ADDI, SP, SP, amount));
+            return;
+        }
+        final var temp = scratchOtherThan(MachineInstruction.NONE);
+        append(MachineInstruction.li(temp, amount));
+        append(MachineInstruction.register(Opcode.ADD, SP, SP, temp));
+    }
+
+    /**
+     * 读写栈帧中偏移为 offset 的字. 偏移超出 12 位立即数时先算出 sp + offset 再以 0 为偏移访存:
+     * lw 直接用目的寄存器保存地址, sw 借用另一个暂存寄存器. 溢出代码在每条指令之后才写回, 此时暂存寄存器中的操作数都已用完,
+     * 被覆盖的暂存寄存器中缓存的溢出变量由 {@link #append} 作废
+     *
+     * @param opcode  {@link Opcode#LW} 或 {@link Opcode#SW}
+     * @param reg     被载入或被存储的物理寄存器
+     * @param offset  相对于 sp 的偏移
+     * @param isSpill 是否为溢出代码, 计入 {@link #getSpillInstructionCount()}
+     */
+    private void accessFrame(Opcode opcode, int reg, int offset, boolean isSpill) {
+        var base = SP;
+        var displacement = offset;
+        if (!InstructionSelector.isImm12(offset)) {
+            base = opcode == Opcode.LW ? reg : scratchOtherThan(reg);
+            displacement = 0;
+            emitFrameCode(MachineInstruction.li(base, offset), isSpill);
+            emitFrameCode(MachineInstruction.register(Opcode.ADD, base, base, SP), isSpill);
+        }
+        emitFrameCode(opcode == Opcode.LW
+                ? MachineInstruction.lw(reg, displacement, base)
+                : MachineInstruction.sw(reg, displacement, base), isSpill);
+    }
+
+    private void emitFrameCode(MachineInstruction instruction, boolean isSpill) {
+        if (isSpill) {
+            spill(instruction);
+        } else {
+            append(instruction);
+        }
+    }
+
+    /**
+     * @return 不是 reg 的一个暂存寄存器
+     */
+    private int scratchOtherThan(int reg) {
+        if (scratch.isEmpty()) {
+            throw new RuntimeException("No scratch register for a large stack frame");
+        }
+        final var first = MachineInstruction.physical(scratch.get(0));
+        return first != reg ? first : MachineInstruction.physical(scratch.get(1));
+    }
+
+    private void spill(MachineInstruction instruction) {
+        append(instruction);
+        spillInstructionCount++;
+    }
+
+    private void append(MachineInstruction instruction) {
+        final var def = instruction.def();
+        if (MachineInstruction.isPhysical(def)) {
+            // 寄存器被覆盖, 其中保存的溢出变量的值作废
+            spilledValues[~def] = -1;
+        }
+        machineCode.add(instruction);
+    }
+
+    /**
+     * @return 最近一次 {@code run} 中因溢出而产生的指令条数, 即 lw/sw 以及偏移超出 12 位立即数时计算地址的 li/add
+     */
+    public int getSpillInstructionCount() {
+        return spillInstructionCount;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 中寄存器分配所用的时间, 单位为纳秒
+     */
+    public long getAllocationNanos() {
+        return allocationNanos;
+    }
+
+    /**
+     * @return 生成的汇编指令条数, 不含伪指令 .text
+     */
+    public int getInstructionCount() {
+        return machineCode.size();
+    }
 
-        throw new RuntimeException("Reg Error");
+    /**
+     * @return 最近一次 {@code run} 生成的只含物理寄存器的机器指令
+     */
+    public List<MachineInstruction> getMachineCode() {
+        return machineCode;
     }
 
     /**
@@ -157,113 +364,155 @@ public class AssemblyGenerator {
      * 提示: 寄存器分配中需要的信息较多, 关于全局的与代码生成过程无关的信息建议在代码生
      * 成前完成建立, 与代码生成的过程相关的信息可自行设计数据结构进行记录并动态维护.
      */
+    @SuppressWarnings("try")
     public void run() {
-        assembly.add(".text");
-        for (Instruction instruction : originInstructions) {
-            int regRes, regL, regR, regTemp;
-            switch (instruction.getKind()) {
-                case RET -> {
-                    index++;
-                    regRes = getReg((IRVariable) instruction.getReturnValue());
-                    assembly.add("    mv a0, t" + regRes);
-                }
-                case MOV -> {
-                    index++;
-                    boolean isImm = instruction.getFrom().isImmediate();
-                    if (isImm) {
-                        regRes = getReg(instruction.getResult());
-                        assembly.add("    li t" + regRes + ", " + ((IRImmediate) instruction.getFrom()).getValue());
-                    } else {
-                        regL = getReg((IRVariable) instruction.getFrom());
-                        regRes = getReg(instruction.getResult());
-                        assembly.add("    mv t" + regRes + ", t" + regL);
-                    }
-                }
-                case ADD -> {
-                    index++;
-                    boolean isLHSImm = instruction.getLHS().isImmediate();
-                    boolean isRHSImm = instruction.getRHS().isImmediate();
-                    if (isLHSImm & isRHSImm) {
-                        regRes = getReg(instruction.getResult());
-                        assembly.add("    li t" + regRes + ", " + (((IRImmediate) instruction.getLHS()).getValue() + ((IRImmediate) instruction.getRHS()).getValue()));
-                    } else if (isLHSImm | isRHSImm) {
-                        regRes = getReg(instruction.getResult());
-                        if (isLHSImm) {
-                            regL = getReg((IRVariable) instruction.getRHS());
-                            assembly.add("    addi t" + regRes + ", t" + regL + ", " + ((IRImmediate) instruction.getLHS()).getValue());
-                        } else {
-                            regL = getReg((IRVariable) instruction.getLHS());
-                            assembly.add("    addi t" + regRes + ", t" + regL + ", " + ((IRImmediate) instruction.getRHS()).getValue());
-                        }
-                    } else {
-                        regRes = getReg(instruction.getResult());
-                        regL = getReg((IRVariable) instruction.getLHS());
-                        regR = getReg((IRVariable) instruction.getRHS());
-                        assembly.add("    add t" + regRes + ", t" + regL + ", t" + regR);
-                    }
-                }
-                case SUB -> {
-                    index++;
-                    boolean isLHSImm = instruction.getLHS().isImmediate();
-                    boolean isRHSImm = instruction.getRHS().isImmediate();
-                    if (isLHSImm & isRHSImm) {
-                        regRes = getReg(instruction.getResult());
-                        assembly.add("    li t" + regRes + ", " + (((IRImmediate) instruction.getLHS()).getValue() - ((IRImmediate) instruction.getRHS()).getValue()));
-                    } else if (isLHSImm | isRHSImm) { //  新建缓存寄存器
-                        index++;
-                        regRes = getReg(instruction.getResult());
-                        regTemp = getReg(IRVariable.temp());
-                        if (isLHSImm) {
-                            regR = getReg((IRVariable) instruction.getRHS());
-                            assembly.add("    li t" + regTemp + ", " + ((IRImmediate) instruction.getLHS()).getValue());
-                            assembly.add("    sub t" + regRes + ", t" + regTemp + ", t" + regR);
-                        } else {
-                            regL = getReg((IRVariable) instruction.getLHS());
-                            assembly.add("    li t" + regTemp + ", " + ((IRImmediate) instruction.getRHS()).getValue());
-                            assembly.add("    sub t" + regRes + ", t" + regL + ", t" + regTemp);
-                        }
-                    } else {
-                        regRes = getReg(instruction.getResult());
-                        regL = getReg((IRVariable) instruction.getLHS());
-                        regR = getReg((IRVariable) instruction.getRHS());
-                        assembly.add("    sub t" + regRes + ", t" + regL + ", t" + regR);
-                    }
-                }
-                case MUL -> {
-                    index++;
-                    boolean isLHSImm = instruction.getLHS().isImmediate();
-                    boolean isRHSImm = instruction.getRHS().isImmediate();
-                    if (isLHSImm & isRHSImm) {
-                        regRes = getReg(instruction.getResult());
-                        assembly.add("    li t" + regRes + ", " + (((IRImmediate) instruction.getLHS()).getValue() * ((IRImmediate) instruction.getRHS()).getValue()));
-                    } else if (isLHSImm | isRHSImm) { //  新建缓存寄存器
-                        index++;
-                        regRes = getReg(instruction.getResult());
-                        regTemp = getReg(IRVariable.temp());
-                        if (isLHSImm) {
-                            regR = getReg((IRVariable) instruction.getRHS());
-                            assembly.add("    li t" + regTemp + ", " + ((IRImmediate) instruction.getLHS()).getValue());
-                            assembly.add("    mul t" + regRes + ", t" + regTemp + ", t" + regR);
-                        } else {
-                            regL = getReg((IRVariable) instruction.getLHS());
-                            assembly.add("    li t" + regTemp + ", " + ((IRImmediate) instruction.getRHS()).getValue());
-                            assembly.add("    mul t" + regRes + ", t" + regL + ", t" + regTemp);
-                        }
-                    } else {
-                        regRes = getReg(instruction.getResult());
-                        regL = getReg((IRVariable) instruction.getLHS());
-                        regR = getReg((IRVariable) instruction.getRHS());
-                        assembly.add("    mul t" + regRes + ", t" + regL + ", t" + regR);
-                    }
-                }
+        final int slotCount;
+        try (final var ignored = instrumentation.begin("register-allocation")) {
+            allocateRegisters();
+            slotCount = assignStackSlots();
+        }
+
+        try (final var ignored = instrumentation.begin("emission")) {
+            emit(slotCount);
+        }
+    }
+
+    /**
+     * 代入寄存器分配的结果, 插入溢出代码与序言尾声, 再做窥孔优化
+     *
+     * @param slotCount 溢出槽位个数
+     */
+    private void emit(int slotCount) {
+        spillInstructionCount = 0;
+        machineCode = new ArrayList<>(selected.size() + 8);
+
+        // 栈帧: 低地址为溢出槽位, 其上为需要保存的 s 寄存器, 总大小按 16 字节对齐
+        // 栈帧大小与槽位偏移超出 12 位立即数时, 由 adjustStack 与 accessFrame 借助暂存寄存器计算
+        final var savedRegisters = Arrays.stream(registers)
+                .filter(reg -> reg != null && reg.isCalleeSaved())
+                .distinct().sorted().toList();
+        final var frameSize = ((slotCount + savedRegisters.size()) * SLOT_SIZE + 15) & ~15;
+
+        if (frameSize > 0) {
+            adjustStack(-frameSize);
+        }
+        for (int i = 0; i < savedRegisters.size(); i++) {
+            accessFrame(Opcode.SW, MachineInstruction.physical(savedRegisters.get(i)), (slotCount + i) * SLOT_SIZE, false);
+        }
+
+        final var codeLines = selectedLines == null ? null : new LineNumbers(selected.size() + 8);
+        if (codeLines != null) {
+            codeLines.extend(machineCode.size(), 0);
+        }
+
+        Arrays.fill(spilledValues, -1);
+        for (int i = 0; i < selected.size(); i++) {
+            scratchInUse = 0;
+            rewrite(selected.get(i));
+            if (codeLines != null) {
+                // 溢出代码属于引起它的指令
+                codeLines.extend(machineCode.size(), selectedLines[i]);
+            }
+        }
+
+        for (int i = 0; i < savedRegisters.size(); i++) {
+            accessFrame(Opcode.LW, MachineInstruction.physical(savedRegisters.get(i)), (slotCount + i) * SLOT_SIZE, false);
+        }
+        if (frameSize > 0) {
+            adjustStack(frameSize);
+        }
+
+        if (codeLines != null) {
+            codeLines.extend(machineCode.size(), 0);
+        }
+
+        machineCode = peephole.run(machineCode, codeLines == null ? null : codeLines.toArray());
+        lines = peephole.getLines();
+        assembly.clear();
+    }
+
+    /**
+     * 将一条使用虚拟寄存器的指令代入分配结果, 必要时插入溢出代码
+     */
+    private void rewrite(MachineInstruction instruction) {
+        if (instruction.isMove()) {
+            final var rd = instruction.rd();
+            final var rs = instruction.rs1();
+            if (isSpilled(rd)) {
+                // 复制到溢出变量, 直接写回栈上即可
+                store(use(rs), rd);
+                return;
             }
+            if (isSpilled(rs) && cachedIn(rs) < 0) {
+                // 从溢出变量复制, 直接从栈上载入目的寄存器
+                final var reg = result(rd);
+                accessFrame(Opcode.LW, reg, stackOffsets[rs], true);
+                return;
+            }
+        }
+
+        final var rs1 = use(instruction.rs1());
+        final var rs2 = use(instruction.rs2());
+        final var def = instruction.def();
+        final var rd = def == MachineInstruction.NONE ? MachineInstruction.NONE : result(def);
+        append(instruction.withRegisters(rd, rs1, rs2));
+        if (def != MachineInstruction.NONE) {
+            written(rd, def);
         }
     }
 
+    /**
+     * @return 汇编文本, 在第一次调用时才由机器指令格式化得到; 记录了行号时, 行号改变处插入 {@code # line N} 注释
+     */
     public List<String> getASM() {
+        if (assembly.isEmpty()) {
+            assembly.add(".text");
+            for (int i = 0; i < machineCode.size(); i++) {
+                if (lines != null && (i == 0 || lines[i] != lines[i - 1])) {
+                    assembly.add("    # line " + lines[i]);
+                }
+                assembly.add("    " + machineCode.get(i));
+            }
+        }
         return assembly;
     }
 
+    /**
+     * @return 最近一次 {@code run} 生成的各条机器指令所属语句所在的行, 序言与尾声为 0; 加载中间代码时未给出行号则为 null
+     */
+    public int[] getLines() {
+        return lines;
+    }
+
+    /**
+     * 行号对照表, 每一行为 "偏移量 行号", 偏移量是十六进制的字节数, 相对于机器码的开头, 与 {@link #encode()} 的结果一致.
+     * 只在行号改变处记录一行, 一行对应的机器码从其偏移量延续到下一行的偏移量, 因此性能分析工具可以按地址把周期数归到源代码行.
+     * 行号 0 表示序言与尾声等不来自源代码的指令.
+     *
+     * @return 对照表的各行, 未记录行号时为空
+     */
+    public List<String> getLineTable() {
+        final var table = new ArrayList<String>();
+        if (lines == null) {
+            return table;
+        }
+        var offset = 0;
+        for (int i = 0; i < machineCode.size(); i++) {
+            if (i == 0 || lines[i] != lines[i - 1]) {
+                table.add("%08x %d".formatted(offset, lines[i]));
+            }
+            offset += 4 * InstructionEncoder.wordCount(machineCode.get(i));
+        }
+        return table;
+    }
+
+    /**
+     * @return 机器指令编码后的指令字
+     */
+    public int[] encode() {
+        return InstructionEncoder.encode(machineCode);
+    }
+
     /**
      * 输出汇编代码到文件
      *
@@ -272,5 +521,19 @@ public class AssemblyGenerator {
     public void dump(String path) {
         FileUtils.writeLines(path, getASM().stream().map(String::toString).toList());
     }
+
+    /**
+     * 按指定格式输出到文件, 二进制格式不经过汇编文本
+     *
+     * @param path   输出文件路径
+     * @param format 输出格式
+     */
+    public void dump(String path, OutputFormat format) {
+        switch (format) {
+            case TEXT -> dump(path);
+            case FLAT -> FileUtils.writeBytes(path, ObjectFile.flat(encode()));
+            case ELF -> FileUtils.writeBytes(path, ObjectFile.elf(encode()));
+        }
+    }
 }
 
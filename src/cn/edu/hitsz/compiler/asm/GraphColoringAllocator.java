@@ -0,0 +1,321 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.utils.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chaitin-Briggs 风格的图着色寄存器分配
+ * <br>
+ * 分为四步:
+ * <ol>
+ *     <li>建图: 逆序扫描机器指令维护活跃的虚拟寄存器集合, 每个定值与其后活跃的虚拟寄存器之间连一条冲突边. mv 的源与目的之间不连边</li>
+ *     <li>合并: 对每条虚拟寄存器之间的 mv, 若源与目的不冲突, 且按 Briggs 准则合并后高度数邻居少于 k 个, 则将两者合并为一个结点,
+ *     之后两者必然得到同一个寄存器, 这条 mv 就成了可由窥孔优化删除的自复制</li>
+ *     <li>简化: 反复移除度数小于 k 的结点压栈; 若不存在这样的结点, 则按 访问次数 / 度数 最小的原则挑一个乐观地压栈</li>
+ *     <li>选择: 依次出栈并挑选邻居未使用的编号最小的寄存器, 没有可用寄存器的结点才真正被溢出</li>
+ * </ol>
+ * 与 {@link LinearScanAllocator} 相比, 冲突关系基于真实的活跃性而非区间, 且能消除复制, 代价是更长的分配时间.
+ * 记录 JFR 时选择阶段为每个代表结点产生一个 ALLOCATE 或 FAIL 的 {@link RegisterAllocationEvent}, 乐观着色不会换出已着色的结点.
+ */
+public class GraphColoringAllocator implements RegisterAllocator {
+    private final List<Register> pool;
+    private int spillCount = 0;
+    private int coalescedCount = 0;
+
+    // 冲突图, 只对代表结点 (未被合并掉的结点) 维护
+    private int[][] adjacency;
+    private int[] adjacencySize;
+    private LongIntHashMap edges;
+    private int[] alias;
+    private int[] cost;
+    // 用于邻居去重的时间戳标记
+    private int[] marks;
+    private int stamp = 0;
+
+    /**
+     * @param pool 可供分配的寄存器, 至多 31 个
+     */
+    public GraphColoringAllocator(List<Register> pool) {
+        if (pool.isEmpty() || pool.size() > 31) {
+            throw new RuntimeException("Illegal register pool size: " + pool.size());
+        }
+        this.pool = pool;
+    }
+
+    @Override
+    public Register[] allocate(List<MachineInstruction> code, LiveIntervals intervals) {
+        final var n = intervals.size();
+        adjacency = new int[n][];
+        adjacencySize = new int[n];
+        edges = new LongIntHashMap(4 * n);
+        alias = new int[n];
+        cost = new int[n];
+        marks = new int[n];
+        for (int id = 0; id < n; id++) {
+            adjacency[id] = new int[4];
+            alias[id] = id;
+            cost[id] = intervals.accessCount(id);
+        }
+        spillCount = 0;
+        coalescedCount = 0;
+
+        final var moves = build(code, intervals);
+        coalesce(moves);
+        final var colors = color(n);
+
+        final var assignment = new Register[n];
+        for (int id = 0; id < n; id++) {
+            final var color = colors[find(id)];
+            assignment[id] = color < 0 ? null : pool.get(color);
+        }
+        return assignment;
+    }
+
+    @Override
+    public int getSpillCount() {
+        return spillCount;
+    }
+
+    /**
+     * @return 最近一次分配中被合并掉的 mv 条数
+     */
+    public int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * 建立冲突图
+     *
+     * @return 所有虚拟寄存器之间的 mv, 每两个元素为一组 (目的, 源)
+     */
+    private int[] build(List<MachineInstruction> code, LiveIntervals intervals) {
+        final var n = intervals.size();
+        // 活跃集合用稀疏集表示, 插入与删除都是 O(1)
+        final var live = new int[n];
+        final var livePosition = new int[n];
+        Arrays.fill(livePosition, -1);
+        var liveSize = 0;
+
+        final var moves = new int[2 * code.size()];
+        var moveCount = 0;
+
+        for (int i = code.size() - 1; i >= 0; i--) {
+            final var instruction = code.get(i);
+            final var def = instruction.def();
+            if (MachineInstruction.isVirtual(def)) {
+                var source = -1;
+                if (instruction.isMove() && MachineInstruction.isVirtual(instruction.rs1())) {
+                    source = instruction.rs1();
+                    moves[moveCount++] = def;
+                    moves[moveCount++] = source;
+                }
+
+                for (int k = 0; k < liveSize; k++) {
+                    if (live[k] != def && live[k] != source) {
+                        addEdge(def, live[k]);
+                    }
+                }
+
+                if (livePosition[def] >= 0) {
+                    final var last = live[--liveSize];
+                    live[livePosition[def]] = last;
+                    livePosition[last] = livePosition[def];
+                    livePosition[def] = -1;
+                }
+            }
+
+            // 依次检查两个源操作数, 不为每条指令分配数组
+            for (int k = 0; k < 2; k++) {
+                final var use = k == 0 ? instruction.rs1() : instruction.rs2();
+                if (MachineInstruction.isVirtual(use) && livePosition[use] < 0) {
+                    livePosition[use] = liveSize;
+                    live[liveSize++] = use;
+                }
+            }
+        }
+
+        return Arrays.copyOf(moves, moveCount);
+    }
+
+    /**
+     * 按 Briggs 准则保守地合并 mv 的源与目的, 直到不再有可合并的 mv
+     */
+    private void coalesce(int[] moves) {
+        final var k = pool.size();
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (int m = 0; m < moves.length; m += 2) {
+                final var a = find(moves[m]);
+                final var b = find(moves[m + 1]);
+                if (a == b || adjacent(a, b)) {
+                    continue;
+                }
+
+                // 合并后的结点中度数不小于 k 的邻居个数
+                stamp++;
+                var significant = 0;
+                for (int side = 0; side < 2; side++) {
+                    final var node = side == 0 ? a : b;
+                    for (int j = 0; j < adjacencySize[node]; j++) {
+                        final var t = adjacency[node][j];
+                        if (marks[t] == stamp) {
+                            continue;
+                        }
+                        marks[t] = stamp;
+                        // 同时与 a, b 相邻的结点在合并后度数减一
+                        final var degree = adjacent(t, a) && adjacent(t, b) ? adjacencySize[t] - 1 : adjacencySize[t];
+                        if (degree >= k) {
+                            significant++;
+                        }
+                    }
+                }
+
+                if (significant < k) {
+                    merge(a, b);
+                    coalescedCount++;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void merge(int a, int b) {
+        alias[b] = a;
+        cost[a] += cost[b];
+        for (int j = 0; j < adjacencySize[b]; j++) {
+            final var t = adjacency[b][j];
+            removeNeighbor(t, b);
+            addEdge(a, t);
+        }
+        adjacencySize[b] = 0;
+    }
+
+    /**
+     * 简化与选择
+     *
+     * @return 以代表结点为下标的颜色, -1 表示溢出
+     */
+    private int[] color(int n) {
+        final var k = pool.size();
+        final var degree = Arrays.copyOf(adjacencySize, n);
+        final var removed = new boolean[n];
+        final var worklist = new int[n];
+        var worklistSize = 0;
+        final var stack = new int[n];
+        var stackSize = 0;
+        var remaining = 0;
+
+        for (int id = 0; id < n; id++) {
+            if (find(id) != id) {
+                removed[id] = true;
+                continue;
+            }
+            remaining++;
+            if (degree[id] < k) {
+                worklist[worklistSize++] = id;
+            }
+        }
+
+        while (remaining > 0) {
+            int node;
+            if (worklistSize > 0) {
+                node = worklist[--worklistSize];
+            } else {
+                // 没有低度数结点, 乐观地挑选溢出代价最小的结点压栈
+                node = -1;
+                var best = Double.MAX_VALUE;
+                for (int id = 0; id < n; id++) {
+                    if (!removed[id]) {
+                        final var priority = (double) cost[id] / (degree[id] + 1);
+                        if (priority < best) {
+                            best = priority;
+                            node = id;
+                        }
+                    }
+                }
+            }
+
+            removed[node] = true;
+            stack[stackSize++] = node;
+            remaining--;
+            for (int j = 0; j < adjacencySize[node]; j++) {
+                final var t = adjacency[node][j];
+                if (!removed[t] && --degree[t] == k - 1) {
+                    worklist[worklistSize++] = t;
+                }
+            }
+        }
+
+        final var colors = new int[n];
+        Arrays.fill(colors, -1);
+        final var all = (1 << k) - 1;
+        final var recording = RegisterAllocationEvent.isRecording();
+        while (stackSize > 0) {
+            final var node = stack[--stackSize];
+            var used = 0;
+            for (int j = 0; j < adjacencySize[node]; j++) {
+                final var color = colors[adjacency[node][j]];
+                if (color >= 0) {
+                    used |= 1 << color;
+                }
+            }
+
+            final var free = ~used & all;
+            if (free == 0) {
+                spillCount++;
+            } else {
+                colors[node] = Integer.numberOfTrailingZeros(free);
+            }
+            if (recording) {
+                RegisterAllocationEvent.commit("graph-coloring",
+                        free == 0 ? RegisterAllocationEvent.FAIL : RegisterAllocationEvent.ALLOCATE,
+                        node, free == 0 ? null : pool.get(colors[node]));
+            }
+        }
+        return colors;
+    }
+
+    private int find(int id) {
+        while (alias[id] != id) {
+            alias[id] = alias[alias[id]];
+            id = alias[id];
+        }
+        return id;
+    }
+
+    private static long edgeKey(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    private boolean adjacent(int a, int b) {
+        return edges.get(edgeKey(a, b), 0) != 0;
+    }
+
+    private void addEdge(int a, int b) {
+        if (a == b || adjacent(a, b)) {
+            return;
+        }
+        edges.put(edgeKey(a, b), 1);
+        appendNeighbor(a, b);
+        appendNeighbor(b, a);
+    }
+
+    private void appendNeighbor(int node, int neighbor) {
+        if (adjacencySize[node] == adjacency[node].length) {
+            adjacency[node] = Arrays.copyOf(adjacency[node], 2 * adjacencySize[node]);
+        }
+        adjacency[node][adjacencySize[node]++] = neighbor;
+    }
+
+    private void removeNeighbor(int node, int neighbor) {
+        for (int j = 0; j < adjacencySize[node]; j++) {
+            if (adjacency[node][j] == neighbor) {
+                adjacency[node][j] = adjacency[node][--adjacencySize[node]];
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package cn.edu.hitsz.compiler.asm;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 将只含物理寄存器的 {@link MachineInstruction} 编码为 RV32IM 机器码
+ * <br>
+ * 伪指令按 RISC-V 汇编手册的标准方式展开:
+ * <ul>
+ *     <li>{@code li rd, imm}: 12 位范围内为 {@code addi rd, x0, imm}, 否则为 {@code lui rd, hi} + {@code addi rd, rd, lo}</li>
+ *     <li>{@code mv rd, rs}: {@code addi rd, rs, 0}</li>
+ *     <li>{@code neg rd, rs}: {@code sub rd, x0, rs}</li>
+ * </ul>
+ */
+public final class InstructionEncoder {
+    private static final int OP = 0b0110011;
+    private static final int OP_IMM = 0b0010011;
+    private static final int LUI = 0b0110111;
+    private static final int LOAD = 0b0000011;
+    private static final int STORE = 0b0100011;
+
+    private InstructionEncoder() {
+    }
+
+    /**
+     * @param code 只含物理寄存器的机器指令
+     * @return 按顺序排列的 32 位指令字
+     */
+    public static int[] encode(List<MachineInstruction> code) {
+        // li 至多展开为两条指令
+        final var words = new int[2 * code.size()];
+        var size = 0;
+        for (final var instruction : code) {
+            final var rd = number(instruction.rd());
+            final var rs1 = number(instruction.rs1());
+            final var rs2 = number(instruction.rs2());
+            final var imm = instruction.imm();
+            switch (instruction.opcode()) {
+                case LI -> {
+                    if (InstructionSelector.isImm12(imm)) {
+                        words[size++] = iType(OP_IMM, 0, rd, 0, imm);
+                    } else {
+                        // addi 的立即数是有符号的, 低 12 位为负时高位需要进一
+                        final var upper = (imm + 0x800) >>> 12;
+                        final var lower = imm - (upper << 12);
+                        words[size++] = (upper << 12) | (rd << 7) | LUI;
+                        if (lower != 0) {
+                            words[size++] = iType(OP_IMM, 0, rd, rd, lower);
+                        }
+                    }
+                }
+                case MV -> words[size++] = iType(OP_IMM, 0, rd, rs1, 0);
+                case NEG -> words[size++] = rType(0b0100000, 0, rd, 0, rs1);
+                case ADD -> words[size++] = rType(0, 0, rd, rs1, rs2);
+                case SUB -> words[size++] = rType(0b0100000, 0, rd, rs1, rs2);
+                case MUL -> words[size++] = rType(0b0000001, 0, rd, rs1, rs2);
+                case ADDI -> words[size++] = iType(OP_IMM, 0, rd, rs1, imm);
+                case SLLI -> words[size++] = iType(OP_IMM, 0b001, rd, rs1, imm & 0x1f);
+                case LW -> words[size++] = iType(LOAD, 0b010, rd, rs1, imm);
+                case SW -> words[size++] = sType(STORE, 0b010, rs1, rs2, imm);
+            }
+        }
+        return Arrays.copyOf(words, size);
+    }
+
+    /**
+     * @param instruction 只含物理寄存器的机器指令
+     * @return 该指令编码后的指令字个数, 与 {@link #encode} 的展开方式一致
+     */
+    public static int wordCount(MachineInstruction instruction) {
+        final var imm = instruction.imm();
+        if (instruction.opcode() != Opcode.LI || InstructionSelector.isImm12(imm)) {
+            return 1;
+        }
+        return imm - (((imm + 0x800) >>> 12) << 12) != 0 ? 2 : 1;
+    }
+
+    private static int rType(int funct7, int funct3, int rd, int rs1, int rs2) {
+        return (funct7 << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | OP;
+    }
+
+    private static int iType(int opcode, int funct3, int rd, int rs1, int imm) {
+        if (!InstructionSelector.isImm12(imm)) {
+            throw new RuntimeException("Immediate out of range: " + imm);
+        }
+        return (imm << 20) | (rs1 << 15) | (funct3 << 12) | (rd << 7) | opcode;
+    }
+
+    private static int sType(int opcode, int funct3, int rs1, int rs2, int imm) {
+        if (!InstructionSelector.isImm12(imm)) {
+            throw new RuntimeException("Immediate out of range: " + imm);
+        }
+        return ((imm >> 5 & 0x7f) << 25) | (rs2 << 20) | (rs1 << 15) | (funct3 << 12) | ((imm & 0x1f) << 7) | opcode;
+    }
+
+    private static int number(int operand) {
+        if (operand == MachineInstruction.NONE) {
+            return 0;
+        }
+        if (MachineInstruction.isVirtual(operand)) {
+            throw new RuntimeException("Cannot encode virtual register %d".formatted(operand));
+        }
+        return ~operand;
+    }
+}
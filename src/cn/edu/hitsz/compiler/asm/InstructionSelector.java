@@ -0,0 +1,174 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.LineNumbers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 指令选择, 将中间代码翻译为使用虚拟寄存器的 {@link MachineInstruction}
+ * <br>
+ * 每个 IR 变量对应一个虚拟寄存器, 返回值写入物理寄存器 a0. 立即数能直接编码进指令时选择 I 型指令:
+ * <ul>
+ *     <li>ADD 的立即数位于 12 位有符号范围内时选择 addi</li>
+ *     <li>SUB 右侧立即数取反后位于 12 位范围内时选择 addi, 左侧立即数位于 12 位范围内时选择 neg + addi</li>
+ *     <li>MUL 右侧立即数为 2 的幂时强度削弱为 slli</li>
+ * </ul>
+ * 其余的立即数都先用 li 物化到新的虚拟寄存器中, 再选择对应的 R 型指令.
+ */
+public class InstructionSelector {
+    private final Map<IRVariable, Integer> virtualRegisters = new HashMap<>();
+    private List<MachineInstruction> code = new ArrayList<>();
+    private int virtualRegisterCount = 0;
+    private int[] lines;
+
+    /**
+     * 执行指令选择
+     *
+     * @param instructions 中间代码
+     * @return 机器指令, 其中的虚拟寄存器编号为 0 到 {@link #getVirtualRegisterCount()} - 1
+     */
+    public List<MachineInstruction> run(List<Instruction> instructions) {
+        return run(instructions, null);
+    }
+
+    /**
+     * 执行指令选择, 同时得到各条机器指令的行号, 见 {@link #getLines()}
+     *
+     * @param instructions 中间代码
+     * @param lines        中间代码中各条指令的行号, 为 null 时不记录
+     * @return 机器指令, 其中的虚拟寄存器编号为 0 到 {@link #getVirtualRegisterCount()} - 1
+     */
+    public List<MachineInstruction> run(List<Instruction> instructions, int[] lines) {
+        virtualRegisters.clear();
+        virtualRegisterCount = 0;
+        code = new ArrayList<>(instructions.size() + instructions.size() / 4);
+        final var codeLines = lines == null ? null : new LineNumbers(instructions.size() + instructions.size() / 4);
+
+        for (int i = 0; i < instructions.size(); i++) {
+            final var instruction = instructions.get(i);
+            switch (instruction.getKind()) {
+                case RET -> copy(MachineInstruction.physical(Register.A0), instruction.getReturnValue());
+                case MOV -> copy(vreg(instruction.getResult()), instruction.getFrom());
+                case ADD, SUB, MUL -> selectBinary(instruction);
+            }
+            if (codeLines != null) {
+                // 一条 IR 可能被翻译为多条机器指令 (物化立即数, neg + addi), 它们都属于同一行
+                codeLines.extend(code.size(), lines[i]);
+            }
+        }
+        this.lines = codeLines == null ? null : codeLines.toArray();
+        return code;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 生成的各条机器指令的行号, 未给出中间代码的行号时为 null
+     */
+    public int[] getLines() {
+        return lines;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 中使用的虚拟寄存器个数
+     */
+    public int getVirtualRegisterCount() {
+        return virtualRegisterCount;
+    }
+
+    private void copy(int rd, IRValue from) {
+        if (from instanceof IRImmediate immediate) {
+            code.add(MachineInstruction.li(rd, immediate.getValue()));
+        } else {
+            code.add(MachineInstruction.unary(Opcode.MV, rd, vreg((IRVariable) from)));
+        }
+    }
+
+    private void selectBinary(Instruction instruction) {
+        final var rd = vreg(instruction.getResult());
+        var lhs = instruction.getLHS();
+        var rhs = instruction.getRHS();
+
+        if (lhs instanceof IRImmediate l && rhs instanceof IRImmediate r) {
+            final var folded = switch (instruction.getKind()) {
+                case ADD -> l.getValue() + r.getValue();
+                case SUB -> l.getValue() - r.getValue();
+                default -> l.getValue() * r.getValue();
+            };
+            code.add(MachineInstruction.li(rd, folded));
+            return;
+        }
+
+        final var opcode = switch (instruction.getKind()) {
+            case ADD -> Opcode.ADD;
+            case SUB -> Opcode.SUB;
+            case MUL -> Opcode.MUL;
+            default -> throw new RuntimeException("Not a binary instruction: " + instruction);
+        };
+        if (opcode != Opcode.SUB && lhs.isImmediate()) {
+            final var swap = lhs;
+            lhs = rhs;
+            rhs = swap;
+        }
+
+        if (rhs instanceof IRImmediate r) {
+            final var value = r.getValue();
+            if (opcode == Opcode.ADD && isImm12(value)) {
+                code.add(MachineInstruction.immediate(Opcode.ADDI, rd, vreg((IRVariable) lhs), value));
+                return;
+            }
+            if (opcode == Opcode.SUB && isImm12(-value)) {
+                code.add(MachineInstruction.immediate(Opcode.ADDI, rd, vreg((IRVariable) lhs), -value));
+                return;
+            }
+            if (opcode == Opcode.MUL && isPowerOfTwo(value)) {
+                code.add(MachineInstruction.immediate(Opcode.SLLI, rd, vreg((IRVariable) lhs),
+                        Integer.numberOfTrailingZeros(value)));
+                return;
+            }
+        } else if (lhs instanceof IRImmediate l && isImm12(l.getValue())) {
+            // imm - x 即 (-x) + imm, 不再需要额外的寄存器存放立即数
+            code.add(MachineInstruction.unary(Opcode.NEG, rd, vreg((IRVariable) rhs)));
+            if (l.getValue() != 0) {
+                code.add(MachineInstruction.immediate(Opcode.ADDI, rd, rd, l.getValue()));
+            }
+            return;
+        }
+
+        final var rs1 = operand(lhs);
+        final var rs2 = operand(rhs);
+        code.add(MachineInstruction.register(opcode, rd, rs1, rs2));
+    }
+
+    /**
+     * @return 存放该操作数的虚拟寄存器, 立即数会先被物化到新的虚拟寄存器中
+     */
+    private int operand(IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            final var temp = virtualRegisterCount++;
+            code.add(MachineInstruction.li(temp, immediate.getValue()));
+            return temp;
+        }
+        return vreg((IRVariable) value);
+    }
+
+    private int vreg(IRVariable variable) {
+        return virtualRegisters.computeIfAbsent(variable, v -> virtualRegisterCount++);
+    }
+
+    /**
+     * @return 立即数能否放入 I 型指令的 12 位有符号立即数字段
+     */
+    static boolean isImm12(int value) {
+        return value >= -2048 && value <= 2047;
+    }
+
+    static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+}
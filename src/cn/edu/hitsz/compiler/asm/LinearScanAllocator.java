@@ -0,0 +1,150 @@
+package cn.edu.hitsz.compiler.asm;
+
+import java.util.List;
+
+/**
+ * 线性扫描寄存器分配
+ * <br>
+ * 按起点顺序依次处理各个活跃区间, 活跃集合用以区间终点为键的二叉堆维护, 每处理一个区间之前先把终点已经过去的区间
+ * 从堆顶弹出并归还其寄存器. 空闲寄存器用位图表示, 总是挑选编号最小的空闲寄存器.
+ * <br>
+ * 当没有空闲寄存器时, 在活跃区间与当前区间中挑选 "下一次访问最远" 的一个整体溢出到栈上, 其分配结果为 null.
+ * 溢出的虚拟寄存器如何读写由 {@link AssemblyGenerator} 负责.
+ * <br>
+ * 区间的计算见 {@link LiveIntervals}, 整个分配过程为 O(n log k), k 为寄存器个数.
+ * 记录 JFR 时每次分配, 换出与溢出都产生一个 {@link RegisterAllocationEvent}.
+ */
+public class LinearScanAllocator implements RegisterAllocator {
+    private final List<Register> pool;
+    private int spillCount = 0;
+
+    /**
+     * @param pool 可供分配的寄存器, 至多 31 个
+     */
+    public LinearScanAllocator(List<Register> pool) {
+        if (pool.isEmpty() || pool.size() > 31) {
+            throw new RuntimeException("Illegal register pool size: " + pool.size());
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * 为所有活跃区间分配寄存器, 线性扫描只需要区间信息
+     *
+     * @param code      机器指令
+     * @param intervals 活跃区间
+     * @return 以区间编号为下标的寄存器分配结果, 被溢出的区间为 null
+     */
+    @Override
+    public Register[] allocate(List<MachineInstruction> code, LiveIntervals intervals) {
+        final var assignment = new Register[intervals.size()];
+        final var registerIndex = new int[intervals.size()];
+        final var active = new int[pool.size()];
+        var activeSize = 0;
+        var freeMask = (1 << pool.size()) - 1;
+        spillCount = 0;
+        final var recording = RegisterAllocationEvent.isRecording();
+
+        for (final var id : intervals.orderByStart()) {
+            final var start = intervals.start(id);
+
+            // 回收已经结束的区间的寄存器
+            while (activeSize > 0 && intervals.end(active[0]) < start) {
+                freeMask |= 1 << registerIndex[active[0]];
+                active[0] = active[--activeSize];
+                siftDown(active, activeSize, intervals);
+            }
+
+            if (freeMask == 0) {
+                // 寄存器耗尽, 溢出下一次访问最远的区间
+                var victim = -1;
+                var victimPosition = intervals.nextAccess(id, start);
+                for (int k = 0; k < activeSize; k++) {
+                    final var next = intervals.nextAccess(active[k], start);
+                    if (next > victimPosition) {
+                        victim = k;
+                        victimPosition = next;
+                    }
+                }
+
+                spillCount++;
+                if (victim < 0) {
+                    if (recording) {
+                        RegisterAllocationEvent.commit("linear-scan", RegisterAllocationEvent.FAIL, id, null);
+                    }
+                    continue;
+                }
+
+                final var victimId = active[victim];
+                if (recording) {
+                    RegisterAllocationEvent.commit("linear-scan", RegisterAllocationEvent.EVICT, victimId,
+                            assignment[victimId]);
+                }
+                assignment[victimId] = null;
+                freeMask |= 1 << registerIndex[victimId];
+                active[victim] = active[--activeSize];
+                heapify(active, activeSize, intervals);
+            }
+
+            final var index = Integer.numberOfTrailingZeros(freeMask);
+            freeMask &= ~(1 << index);
+            registerIndex[id] = index;
+            assignment[id] = pool.get(index);
+            if (recording) {
+                RegisterAllocationEvent.commit("linear-scan", RegisterAllocationEvent.ALLOCATE, id, assignment[id]);
+            }
+
+            active[activeSize] = id;
+            siftUp(active, activeSize++, intervals);
+        }
+
+        return assignment;
+    }
+
+    @Override
+    public int getSpillCount() {
+        return spillCount;
+    }
+
+    private static void heapify(int[] heap, int size, LiveIntervals intervals) {
+        for (int i = 1; i < size; i++) {
+            siftUp(heap, i, intervals);
+        }
+    }
+
+    private static void siftUp(int[] heap, int position, LiveIntervals intervals) {
+        final var id = heap[position];
+        while (position > 0) {
+            final var parent = (position - 1) >>> 1;
+            if (intervals.end(heap[parent]) <= intervals.end(id)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = id;
+    }
+
+    private static void siftDown(int[] heap, int size, LiveIntervals intervals) {
+        if (size == 0) {
+            return;
+        }
+        final var id = heap[0];
+        var position = 0;
+        while (true) {
+            var child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && intervals.end(heap[child + 1]) < intervals.end(heap[child])) {
+                child++;
+            }
+            if (intervals.end(id) <= intervals.end(heap[child])) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = id;
+    }
+}
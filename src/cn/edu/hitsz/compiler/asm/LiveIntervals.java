@@ -0,0 +1,162 @@
+package cn.edu.hitsz.compiler.asm;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 虚拟寄存器的活跃区间
+ * <br>
+ * 源语言没有分支, 因此每个虚拟寄存器的活跃范围就是从首次出现到最后一次使用的一段连续区间. 只需对机器指令做一次逆序扫描:
+ * 第一次遇到某个虚拟寄存器时记下区间终点, 之后每次遇到都把起点往前推. 物理寄存器操作数 (如返回值 a0) 不参与分配, 直接忽略.
+ * <br>
+ * 区间位置以 "半条指令" 为单位: 第 i 条指令读取操作数的位置为 2i, 写入结果的位置为 2i + 1. 这样在同一条指令中
+ * 最后一次被使用的操作数与新定义的结果的区间不相交, 结果可以复用操作数的寄存器.
+ * <br>
+ * 同一遍扫描中还会记录每个虚拟寄存器的所有访问 (读与写) 位置, 以 CSR 形式压缩存放, 供溢出时按 "下一次访问最远" 挑选牺牲者.
+ * 区间编号即虚拟寄存器编号.
+ */
+public class LiveIntervals {
+    private final int[] start;
+    private final int[] end;
+    private final int[] orderByStart;
+    // 第 id 个虚拟寄存器的访问位置为 accesses[accessBegin[id]] ... accesses[accessBegin[id + 1] - 1], 升序
+    private final int[] accessBegin;
+    private final int[] accesses;
+
+    private LiveIntervals(int[] start, int[] end, int positions, int[] accessBegin, int[] accesses) {
+        this.start = start;
+        this.end = end;
+        this.orderByStart = countingSort(start, positions);
+        this.accessBegin = accessBegin;
+        this.accesses = accesses;
+    }
+
+    /**
+     * 逆序扫描一遍机器指令, 计算所有虚拟寄存器的活跃区间
+     *
+     * @param code                 指令选择产出的机器指令
+     * @param virtualRegisterCount 虚拟寄存器个数, 每个虚拟寄存器都必须在代码中出现
+     * @return 活跃区间
+     */
+    public static LiveIntervals compute(List<MachineInstruction> code, int virtualRegisterCount) {
+        final var n = code.size();
+        final var start = new int[virtualRegisterCount];
+        final var end = new int[virtualRegisterCount];
+        Arrays.fill(end, -1);
+        // 逆序记录的 (虚拟寄存器, 位置) 访问对, 每条指令至多涉及三个寄存器
+        final var accessIds = new int[3 * n];
+        final var accessPositions = new int[3 * n];
+        var accessCount = 0;
+
+        for (int i = n - 1; i >= 0; i--) {
+            final var instruction = code.get(i);
+            final var def = instruction.def();
+            if (MachineInstruction.isVirtual(def)) {
+                touch(def, 2 * i + 1, start, end);
+                accessIds[accessCount] = def;
+                accessPositions[accessCount++] = 2 * i + 1;
+            }
+            // 依次检查两个源操作数, 不为每条指令分配数组
+            for (int k = 0; k < 2; k++) {
+                final var use = k == 0 ? instruction.rs1() : instruction.rs2();
+                if (MachineInstruction.isVirtual(use)) {
+                    touch(use, 2 * i, start, end);
+                    accessIds[accessCount] = use;
+                    accessPositions[accessCount++] = 2 * i;
+                }
+            }
+        }
+
+        final var accessBegin = new int[virtualRegisterCount + 1];
+        for (int k = 0; k < accessCount; k++) {
+            accessBegin[accessIds[k] + 1]++;
+        }
+        for (int id = 0; id < virtualRegisterCount; id++) {
+            if (end[id] < 0) {
+                throw new RuntimeException("Virtual register %d does not appear in code".formatted(id));
+            }
+            accessBegin[id + 1] += accessBegin[id];
+        }
+        // 访问对是逆序记录的, 从每段的末尾往前填即可得到升序
+        final var fill = Arrays.copyOfRange(accessBegin, 1, virtualRegisterCount + 1);
+        final var accesses = new int[accessCount];
+        for (int k = 0; k < accessCount; k++) {
+            accesses[--fill[accessIds[k]]] = accessPositions[k];
+        }
+
+        return new LiveIntervals(start, end, 2 * n, accessBegin, accesses);
+    }
+
+    private static void touch(int id, int position, int[] start, int[] end) {
+        if (end[id] < 0) {
+            end[id] = position;
+        }
+        start[id] = position;
+    }
+
+    /**
+     * 区间起点都落在 [0, positions) 内, 用计数排序即可在线性时间内得到按起点排序的区间序列
+     */
+    private static int[] countingSort(int[] start, int positions) {
+        final var buckets = new int[positions + 1];
+        for (final var s : start) {
+            buckets[s + 1]++;
+        }
+        for (int i = 1; i <= positions; i++) {
+            buckets[i] += buckets[i - 1];
+        }
+        final var order = new int[start.length];
+        for (int id = 0; id < start.length; id++) {
+            order[buckets[start[id]]++] = id;
+        }
+        return order;
+    }
+
+    /**
+     * @return 区间个数, 即虚拟寄存器个数
+     */
+    public int size() {
+        return start.length;
+    }
+
+    public int start(int id) {
+        return start[id];
+    }
+
+    public int end(int id) {
+        return end[id];
+    }
+
+    /**
+     * @param id       区间编号
+     * @param position 位置
+     * @return 该虚拟寄存器在 position 及之后的第一次访问位置, 不存在时为 {@link Integer#MAX_VALUE}
+     */
+    public int nextAccess(int id, int position) {
+        var low = accessBegin[id];
+        var high = accessBegin[id + 1];
+        while (low < high) {
+            final var mid = (low + high) >>> 1;
+            if (accesses[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < accessBegin[id + 1] ? accesses[low] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return 该虚拟寄存器被访问的总次数
+     */
+    public int accessCount(int id) {
+        return accessBegin[id + 1] - accessBegin[id];
+    }
+
+    /**
+     * @return 按起点升序排列的区间编号
+     */
+    public int[] orderByStart() {
+        return orderByStart;
+    }
+}
@@ -0,0 +1,110 @@
+package cn.edu.hitsz.compiler.asm;
+
+/**
+ * 机器指令, 即与 RISC-V 汇编一一对应的低层 IR
+ * <br>
+ * 寄存器操作数用 int 表示: 非负数为虚拟寄存器编号, 负数 {@code ~n} 为物理寄存器 xn, {@link #NONE} 表示该指令没有此操作数.
+ * 指令选择产出的代码中绝大部分操作数是虚拟寄存器, 寄存器分配后全部改写为物理寄存器, 之后才会被格式化为汇编文本.
+ *
+ * @param opcode 操作码
+ * @param rd     目的寄存器
+ * @param rs1    第一个源寄存器, 访存指令中为基址寄存器
+ * @param rs2    第二个源寄存器, sw 中为被存储的寄存器
+ * @param imm    立即数
+ */
+public record MachineInstruction(Opcode opcode, int rd, int rs1, int rs2, int imm) {
+    public static final int NONE = Integer.MIN_VALUE;
+
+    //============================== 构造函数 ==============================
+    public static MachineInstruction li(int rd, int imm) {
+        return new MachineInstruction(Opcode.LI, rd, NONE, NONE, imm);
+    }
+
+    public static MachineInstruction unary(Opcode opcode, int rd, int rs1) {
+        return new MachineInstruction(opcode, rd, rs1, NONE, 0);
+    }
+
+    public static MachineInstruction register(Opcode opcode, int rd, int rs1, int rs2) {
+        return new MachineInstruction(opcode, rd, rs1, rs2, 0);
+    }
+
+    public static MachineInstruction immediate(Opcode opcode, int rd, int rs1, int imm) {
+        return new MachineInstruction(opcode, rd, rs1, NONE, imm);
+    }
+
+    public static MachineInstruction lw(int rd, int offset, int base) {
+        return new MachineInstruction(Opcode.LW, rd, base, NONE, offset);
+    }
+
+    public static MachineInstruction sw(int rs2, int offset, int base) {
+        return new MachineInstruction(Opcode.SW, NONE, base, rs2, offset);
+    }
+
+    //============================== 寄存器操作数 ==============================
+
+    /**
+     * @param reg 物理寄存器
+     * @return 该物理寄存器作为操作数时的表示
+     */
+    public static int physical(Register reg) {
+        return ~reg.getNumber();
+    }
+
+    public static boolean isVirtual(int operand) {
+        return operand >= 0;
+    }
+
+    public static boolean isPhysical(int operand) {
+        return operand < 0 && operand != NONE;
+    }
+
+    /**
+     * @param operand 物理寄存器操作数
+     * @return 对应的物理寄存器
+     */
+    public static Register toRegister(int operand) {
+        if (!isPhysical(operand)) {
+            throw new RuntimeException("Not a physical register: " + operand);
+        }
+        return Register.fromNumber(~operand);
+    }
+
+    /**
+     * @return 被写入的寄存器, 没有时为 {@link #NONE}
+     */
+    public int def() {
+        return opcode.getFormat() == Opcode.Format.STORE ? NONE : rd;
+    }
+
+    /**
+     * @return 是否为寄存器之间的复制
+     */
+    public boolean isMove() {
+        return opcode == Opcode.MV;
+    }
+
+    /**
+     * @return 替换了寄存器操作数的新指令
+     */
+    public MachineInstruction withRegisters(int rd, int rs1, int rs2) {
+        return new MachineInstruction(opcode, rd, rs1, rs2, imm);
+    }
+
+    //============================== 格式化 ==============================
+    @Override
+    public String toString() {
+        final var op = opcode.getMnemonic();
+        return switch (opcode.getFormat()) {
+            case IMMEDIATE -> "%s %s, %d".formatted(op, name(rd), imm);
+            case UNARY -> "%s %s, %s".formatted(op, name(rd), name(rs1));
+            case REGISTER -> "%s %s, %s, %s".formatted(op, name(rd), name(rs1), name(rs2));
+            case REGISTER_IMMEDIATE -> "%s %s, %s, %d".formatted(op, name(rd), name(rs1), imm);
+            case LOAD -> "%s %s, %d(%s)".formatted(op, name(rd), imm, name(rs1));
+            case STORE -> "%s %s, %d(%s)".formatted(op, name(rs2), imm, name(rs1));
+        };
+    }
+
+    private static String name(int operand) {
+        return isVirtual(operand) ? "%v" + operand : toRegister(operand).toString();
+    }
+}
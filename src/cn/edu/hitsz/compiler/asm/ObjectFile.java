@@ -0,0 +1,84 @@
+package cn.edu.hitsz.compiler.asm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 将机器码打包为可以直接写入文件的字节
+ */
+public final class ObjectFile {
+    /**
+     * ELF 可执行文件的加载地址, 与 RISC-V Linux 工具链的默认值一致
+     */
+    public static final int ELF_BASE_ADDRESS = 0x10000;
+
+    private static final int ELF_HEADER_SIZE = 52;
+    private static final int PROGRAM_HEADER_SIZE = 32;
+    private static final int SECTION_HEADER_SIZE = 40;
+    private static final short EM_RISCV = 243;
+    private static final byte[] SECTION_NAMES = "\0.text\0.shstrtab\0".getBytes(StandardCharsets.US_ASCII);
+    // li a7, 93 (addi a7, x0, 93); ecall: 以 a0 为退出码调用 Linux 的 exit
+    private static final int[] EXIT_SEQUENCE = {0x05d00893, 0x00000073};
+
+    private ObjectFile() {
+    }
+
+    /**
+     * @param words 指令字
+     * @return 按小端序依次排列的指令字
+     */
+    public static ByteBuffer flat(int[] words) {
+        final var buffer = ByteBuffer.allocate(4 * words.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(words);
+        return buffer;
+    }
+
+    /**
+     * 构造最小的 ELF32 可执行文件
+     * <br>
+     * 文件布局为 ELF 头, 一个程序头, .text, .shstrtab, 节头表. 唯一的 PT_LOAD 段从文件开头映射到
+     * {@link #ELF_BASE_ADDRESS}, 入口为 .text 的首条指令. 节头表只用于 readelf/objdump 等工具的展示.
+     * <br>
+     * 生成的代码执行完后返回值留在 a0 中, .text 的末尾追加 {@code li a7, 93; ecall}, 以返回值为退出码结束进程,
+     * 而不是继续执行 .text 之后的字节.
+     *
+     * @param words 指令字
+     * @return 整个文件的内容
+     */
+    public static ByteBuffer elf(int[] words) {
+        final var textOffset = ELF_HEADER_SIZE + PROGRAM_HEADER_SIZE;
+        final var textSize = 4 * (words.length + EXIT_SEQUENCE.length);
+        final var namesOffset = textOffset + textSize;
+        final var sectionHeadersOffset = (namesOffset + SECTION_NAMES.length + 3) & ~3;
+        final var fileSize = sectionHeadersOffset + 3 * SECTION_HEADER_SIZE;
+        final var buffer = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        // ELF 头: ELFCLASS32, ELFDATA2LSB, EV_CURRENT, ET_EXEC
+        buffer.put(new byte[]{0x7f, 'E', 'L', 'F', 1, 1, 1, 0}).put(new byte[8]);
+        buffer.putShort((short) 2).putShort(EM_RISCV).putInt(1);
+        buffer.putInt(ELF_BASE_ADDRESS + textOffset).putInt(ELF_HEADER_SIZE).putInt(sectionHeadersOffset);
+        buffer.putInt(0).putShort((short) ELF_HEADER_SIZE);
+        buffer.putShort((short) PROGRAM_HEADER_SIZE).putShort((short) 1);
+        buffer.putShort((short) SECTION_HEADER_SIZE).putShort((short) 3).putShort((short) 2);
+
+        // 程序头: PT_LOAD, 可读可执行
+        buffer.putInt(1).putInt(0).putInt(ELF_BASE_ADDRESS).putInt(ELF_BASE_ADDRESS);
+        buffer.putInt(namesOffset).putInt(namesOffset).putInt(0b101).putInt(0x1000);
+
+        buffer.asIntBuffer().put(words).put(EXIT_SEQUENCE);
+        buffer.position(namesOffset).put(SECTION_NAMES);
+
+        // 节头表: 空节, .text (SHT_PROGBITS, SHF_ALLOC | SHF_EXECINSTR), .shstrtab (SHT_STRTAB)
+        buffer.position(sectionHeadersOffset).put(new byte[SECTION_HEADER_SIZE]);
+        sectionHeader(buffer, 1, 1, 0b110, ELF_BASE_ADDRESS + textOffset, textOffset, textSize, 4);
+        sectionHeader(buffer, 7, 3, 0, 0, namesOffset, SECTION_NAMES.length, 1);
+        return buffer.rewind();
+    }
+
+    private static void sectionHeader(ByteBuffer buffer, int name, int type, int flags, int address, int offset,
+                                      int size, int alignment) {
+        buffer.putInt(name).putInt(type).putInt(flags).putInt(address).putInt(offset).putInt(size);
+        buffer.putInt(0).putInt(0).putInt(alignment).putInt(0);
+    }
+}
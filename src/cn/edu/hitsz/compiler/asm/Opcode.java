@@ -0,0 +1,51 @@
+package cn.edu.hitsz.compiler.asm;
+
+/**
+ * 后端用到的 RV32IM 指令 (含伪指令) 的操作码
+ */
+public enum Opcode {
+    LI("li", Format.IMMEDIATE),
+    MV("mv", Format.UNARY),
+    NEG("neg", Format.UNARY),
+    ADD("add", Format.REGISTER),
+    ADDI("addi", Format.REGISTER_IMMEDIATE),
+    SUB("sub", Format.REGISTER),
+    MUL("mul", Format.REGISTER),
+    SLLI("slli", Format.REGISTER_IMMEDIATE),
+    LW("lw", Format.LOAD),
+    SW("sw", Format.STORE);
+
+    private final String mnemonic;
+    private final Format format;
+
+    Opcode(String mnemonic, Format format) {
+        this.mnemonic = mnemonic;
+        this.format = format;
+    }
+
+    public String getMnemonic() {
+        return mnemonic;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * 汇编文本中的操作数格式, 同时决定了指令读写了哪些寄存器
+     */
+    public enum Format {
+        // op rd, imm
+        IMMEDIATE,
+        // op rd, rs1
+        UNARY,
+        // op rd, rs1, rs2
+        REGISTER,
+        // op rd, rs1, imm
+        REGISTER_IMMEDIATE,
+        // op rd, imm(rs1)
+        LOAD,
+        // op rs2, imm(rs1)
+        STORE
+    }
+}
@@ -0,0 +1,19 @@
+package cn.edu.hitsz.compiler.asm;
+
+/**
+ * 后端的输出格式
+ */
+public enum OutputFormat {
+    /**
+     * RARS 可以直接汇编的汇编文本
+     */
+    TEXT,
+    /**
+     * 不带任何头部的机器码, 小端序
+     */
+    FLAT,
+    /**
+     * 只含一个可执行段的最小 ELF32 可执行文件
+     */
+    ELF
+}
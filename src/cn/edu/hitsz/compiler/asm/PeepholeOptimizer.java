@@ -0,0 +1,176 @@
+package cn.edu.hitsz.compiler.asm;
+
+import cn.edu.hitsz.compiler.utils.LineNumbers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 针对寄存器分配之后的机器指令的窥孔优化
+ * <br>
+ * 每一遍先逆序计算每条指令之后活跃的物理寄存器 (32 个寄存器恰好放进一个 int 位图), 再顺序扫描相邻的两条指令:
+ * <ul>
+ *     <li>自复制 {@code mv r, r} 直接删除</li>
+ *     <li>{@code mv a, b} 之后紧跟的 {@code mv b, a} 是冗余的</li>
+ *     <li>{@code li t, k} 之后紧跟的 add/sub/mul/addi 若是 t 的最后一次使用, 则把 k 折叠进 addi/slli/li</li>
+ *     <li>{@code op t, ...} 之后紧跟 {@code mv d, t} 且 t 不再被使用时, 让 op 直接写入 d</li>
+ * </ul>
+ * 改写会产生新的相邻指令对, 因此重复执行直到不再变化. 合并得到的指令沿用前一条指令的行号.
+ */
+public class PeepholeOptimizer {
+    // 程序结束时仍然活跃的寄存器: 返回值 a0 与栈指针 sp
+    private static final int LIVE_OUT = bit(Register.A0.getNumber()) | bit(Register.SP.getNumber());
+    private int removedCount = 0;
+    private int[] lines;
+
+    /**
+     * 执行窥孔优化
+     *
+     * @param code 只含物理寄存器的机器指令
+     * @return 优化后的机器指令, 原列表不会被修改
+     */
+    public List<MachineInstruction> run(List<MachineInstruction> code) {
+        return run(code, null);
+    }
+
+    /**
+     * 执行窥孔优化, 同时得到优化后各条指令的行号, 见 {@link #getLines()}
+     *
+     * @param code  只含物理寄存器的机器指令
+     * @param lines 各条指令的行号, 为 null 时不记录
+     * @return 优化后的机器指令, 原列表不会被修改
+     */
+    public List<MachineInstruction> run(List<MachineInstruction> code, int[] lines) {
+        removedCount = 0;
+        var current = code;
+        var currentLines = lines;
+        while (true) {
+            final var nextLines = currentLines == null ? null : new LineNumbers(current.size());
+            final var next = pass(current, currentLines, nextLines);
+            // 每一处改写都会删除一条指令
+            if (next.size() == current.size()) {
+                this.lines = currentLines;
+                return current;
+            }
+            removedCount += current.size() - next.size();
+            current = next;
+            currentLines = nextLines == null ? null : nextLines.toArray();
+        }
+    }
+
+    /**
+     * @return 最近一次 {@code run} 的结果中各条指令的行号, 未给出行号时为 null
+     */
+    public int[] getLines() {
+        return lines;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 中被删除的指令条数
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    private static List<MachineInstruction> pass(List<MachineInstruction> code, int[] lines, LineNumbers resultLines) {
+        final var n = code.size();
+        final var liveAfter = new int[n];
+        var live = LIVE_OUT;
+        for (int i = n - 1; i >= 0; i--) {
+            liveAfter[i] = live;
+            final var instruction = code.get(i);
+            live = (live & ~mask(instruction.def())) | mask(instruction.rs1()) | mask(instruction.rs2());
+        }
+
+        final var result = new ArrayList<MachineInstruction>(n);
+        for (int i = 0; i < n; i++) {
+            final var current = code.get(i);
+            if (current.isMove() && current.rd() == current.rs1()) {
+                continue;
+            }
+            final var combined = i + 1 == n ? null : combine(current, code.get(i + 1), liveAfter[i + 1]);
+            result.add(combined == null ? current : combined);
+            if (resultLines != null) {
+                resultLines.extend(result.size(), lines[i]);
+            }
+            if (combined != null) {
+                i++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 尝试把相邻的两条指令合并为一条
+     *
+     * @param first     前一条指令
+     * @param second    后一条指令
+     * @param liveAfter 后一条指令之后活跃的寄存器
+     * @return 合并后的指令, 不能合并时为 null
+     */
+    private static MachineInstruction combine(MachineInstruction first, MachineInstruction second, int liveAfter) {
+        // mv a, b; mv b, a: 第二条什么都没做
+        if (first.isMove() && second.isMove() && first.rd() == second.rs1() && first.rs1() == second.rd()) {
+            return first;
+        }
+
+        final var t = first.def();
+        if (t == MachineInstruction.NONE || t == MachineInstruction.physical(Register.SP)) {
+            return null;
+        }
+        // t 在第二条指令之后不再被读取, 或被第二条指令重新定值
+        final var dead = (liveAfter & mask(t)) == 0 || second.def() == t;
+        if (!dead) {
+            return null;
+        }
+
+        if (first.opcode() == Opcode.LI) {
+            final var folded = foldImmediate(first.imm(), t, second);
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        // op t, ...; mv d, t: 让 op 直接写入 d
+        if (second.isMove() && second.rs1() == t) {
+            return first.withRegisters(second.rd(), first.rs1(), first.rs2());
+        }
+        return null;
+    }
+
+    /**
+     * 把 {@code li t, k} 折叠进读取 t 的下一条指令
+     */
+    private static MachineInstruction foldImmediate(int k, int t, MachineInstruction second) {
+        final var rd = second.rd();
+        final var rs1 = second.rs1();
+        final var rs2 = second.rs2();
+        // 另一个操作数, 两个操作数都是 t 时不折叠
+        final var other = rs1 == t ? rs2 : rs1;
+        final var readsOnce = (rs1 == t) != (rs2 == t);
+
+        return switch (second.opcode()) {
+            case ADD -> readsOnce && InstructionSelector.isImm12(k)
+                    ? MachineInstruction.immediate(Opcode.ADDI, rd, other, k) : null;
+            case SUB -> rs2 == t && rs1 != t && InstructionSelector.isImm12(-k)
+                    ? MachineInstruction.immediate(Opcode.ADDI, rd, rs1, -k) : null;
+            case MUL -> readsOnce && InstructionSelector.isPowerOfTwo(k)
+                    ? MachineInstruction.immediate(Opcode.SLLI, rd, other, Integer.numberOfTrailingZeros(k)) : null;
+            case ADDI -> rs1 == t ? MachineInstruction.li(rd, k + second.imm()) : null;
+            default -> null;
+        };
+    }
+
+    private static int mask(int operand) {
+        if (!MachineInstruction.isPhysical(operand)) {
+            return 0;
+        }
+        final var number = MachineInstruction.toRegister(operand).getNumber();
+        // x0 恒为零, 不参与活跃性
+        return number == 0 ? 0 : bit(number);
+    }
+
+    private static int bit(int number) {
+        return 1 << number;
+    }
+}
@@ -0,0 +1,63 @@
+package cn.edu.hitsz.compiler.asm;
+
+import java.util.List;
+
+/**
+ * RISC-V 的 32 个通用寄存器, 以 ABI 名称表示
+ */
+public enum Register {
+    ZERO(0), RA(1), SP(2), GP(3), TP(4),
+    T0(5), T1(6), T2(7),
+    S0(8), S1(9),
+    A0(10), A1(11), A2(12), A3(13), A4(14), A5(15), A6(16), A7(17),
+    S2(18), S3(19), S4(20), S5(21), S6(22), S7(23), S8(24), S9(25), S10(26), S11(27),
+    T3(28), T4(29), T5(30), T6(31);
+
+    /**
+     * 调用者保存的临时寄存器 t0-t6, 默认的寄存器分配池
+     */
+    public static final List<Register> TEMPORARIES = List.of(T0, T1, T2, T3, T4, T5, T6);
+
+    /**
+     * 按调用约定扩展后的寄存器分配池: 临时寄存器, 除 a0 (返回值) 外的参数寄存器, 以及除 s0 (帧指针) 外的保存寄存器.
+     * 保存寄存器排在最后, 只有在前面的寄存器不够用时才会被分配, 使用时需要在序言与尾声中保存与恢复.
+     */
+    public static final List<Register> EXTENDED = List.of(
+            T0, T1, T2, T3, T4, T5, T6,
+            A1, A2, A3, A4, A5, A6, A7,
+            S1, S2, S3, S4, S5, S6, S7, S8, S9, S10, S11);
+
+    private static final Register[] byNumber = values();
+    private final int number;
+
+    Register(int number) {
+        this.number = number;
+    }
+
+    /**
+     * @param number 寄存器编号
+     * @return 编号为 x{number} 的寄存器
+     */
+    public static Register fromNumber(int number) {
+        return byNumber[number];
+    }
+
+    /**
+     * @return 寄存器编号, 即 x0-x31 中的数字
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * @return 是否为被调用者保存的寄存器 (s0-s11), 使用前需要保存原值
+     */
+    public boolean isCalleeSaved() {
+        return this == S0 || this == S1 || (number >= S2.number && number <= S11.number);
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
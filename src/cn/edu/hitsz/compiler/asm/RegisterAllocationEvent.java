@@ -0,0 +1,65 @@
+package cn.edu.hitsz.compiler.asm;
+
+import jdk.jfr.*;
+
+/**
+ * 寄存器分配器的一次决策
+ * <ul>
+ *     <li>ALLOCATE: 为虚拟寄存器分配了物理寄存器</li>
+ *     <li>EVICT: 已分配的虚拟寄存器被换出到栈上, 让出寄存器</li>
+ *     <li>FAIL: 虚拟寄存器没能得到寄存器, 直接溢出</li>
+ * </ul>
+ * 每个虚拟寄存器至少产生一个事件, 一次大程序的编译可达十几万个, 因此默认不记录 ({@code @Enabled(false)}),
+ * 只带 {@code -XX:StartFlightRecording} 的记录中没有本事件. 需要时在短时间的记录中显式开启, 如
+ * {@code -XX:StartFlightRecording:+cn.edu.hitsz.compiler.RegisterAllocation#enabled=true,filename=alloc.jfr},
+ * 或在自定义的 .jfc 文件中加入
+ * {@code <event name="cn.edu.hitsz.compiler.RegisterAllocation"><setting name="enabled">true</setting></event>}
+ * 并以 {@code -XX:StartFlightRecording:settings=该文件} 启动. 未开启时分配器只在每次分配开始时检查一次, 见 {@link #isRecording()}.
+ */
+@Name("cn.edu.hitsz.compiler.RegisterAllocation")
+@Label("Register Allocation Decision")
+@Category({"Compiler", "Backend"})
+@Description("One allocate, evict or fail decision of a register allocator")
+@StackTrace(false)
+@Enabled(false)
+public class RegisterAllocationEvent extends Event {
+    public static final String ALLOCATE = "ALLOCATE";
+    public static final String EVICT = "EVICT";
+    public static final String FAIL = "FAIL";
+
+    @Label("Allocator")
+    public String allocator;
+
+    @Label("Decision")
+    public String decision;
+
+    @Label("Virtual Register")
+    public int virtualRegister;
+
+    @Label("Register")
+    public String register;
+
+    /**
+     * @return 该事件是否正被记录, 分配器在每次分配开始时检查一次, 未记录时不再创建事件对象
+     */
+    static boolean isRecording() {
+        return new RegisterAllocationEvent().isEnabled();
+    }
+
+    /**
+     * 提交一次决策
+     *
+     * @param allocator       分配器名
+     * @param decision        {@link #ALLOCATE}, {@link #EVICT} 或 {@link #FAIL}
+     * @param virtualRegister 虚拟寄存器编号
+     * @param register        分配或让出的物理寄存器, FAIL 时为 null
+     */
+    static void commit(String allocator, String decision, int virtualRegister, Register register) {
+        final var event = new RegisterAllocationEvent();
+        event.allocator = allocator;
+        event.decision = decision;
+        event.virtualRegister = virtualRegister;
+        event.register = register == null ? null : register.toString();
+        event.commit();
+    }
+}
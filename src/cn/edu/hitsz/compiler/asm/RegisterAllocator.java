@@ -0,0 +1,45 @@
+package cn.edu.hitsz.compiler.asm;
+
+import java.util.List;
+
+/**
+ * 寄存器分配器
+ * <br>
+ * 分配器只决定每个虚拟寄存器映射到哪个物理寄存器, 被溢出的虚拟寄存器的分配结果为 null, 溢出代码的生成由 {@link AssemblyGenerator} 负责.
+ *
+ * @see LinearScanAllocator 线性扫描, 速度快
+ * @see GraphColoringAllocator 图着色, 分配质量高
+ */
+public interface RegisterAllocator {
+    /**
+     * 为所有虚拟寄存器分配物理寄存器
+     *
+     * @param code      指令选择产出的机器指令
+     * @param intervals 由这些机器指令计算出的活跃区间
+     * @return 以虚拟寄存器编号为下标的寄存器分配结果, 被溢出的为 null
+     */
+    Register[] allocate(List<MachineInstruction> code, LiveIntervals intervals);
+
+    /**
+     * @return 最近一次分配中被溢出的虚拟寄存器个数
+     */
+    int getSpillCount();
+
+    /**
+     * 可选的寄存器分配算法
+     */
+    enum Kind {
+        LINEAR_SCAN, GRAPH_COLORING;
+
+        /**
+         * @param pool 可供分配的寄存器
+         * @return 使用该算法的分配器
+         */
+        public RegisterAllocator create(List<Register> pool) {
+            return switch (this) {
+                case LINEAR_SCAN -> new LinearScanAllocator(pool);
+                case GRAPH_COLORING -> new GraphColoringAllocator(pool);
+            };
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 代数化简, 针对带立即数的 ADD/SUB/MUL
+ * <br>
+ * 对每条指令独立地做如下变换:
+ * <ul>
+ *     <li>两个操作数均为立即数时直接折叠为 MOV</li>
+ *     <li>{@code x + 0}, {@code x - 0}, {@code x * 1} 化简为 {@code MOV x}</li>
+ *     <li>{@code x * 0}, {@code x - x} 化简为 {@code MOV 0}</li>
+ *     <li>满足交换律的 ADD/MUL 将立即数交换到右侧, 便于后端直接选择 addi/slli</li>
+ * </ul>
+ * 乘以 2 的幂的强度削弱依赖于 RISC-V 的移位指令, 放在 {@link cn.edu.hitsz.compiler.asm.InstructionSelector} 中完成.
+ */
+public class AlgebraicSimplifier {
+    private int simplifiedCount = 0;
+
+    /**
+     * 执行代数化简
+     *
+     * @param instructions 原始 IR
+     * @return 化简后的 IR, 原列表不会被修改
+     */
+    public List<Instruction> run(List<Instruction> instructions) {
+        simplifiedCount = 0;
+        final var result = new ArrayList<Instruction>(instructions.size());
+        for (final var instruction : instructions) {
+            final var simplified = instruction.getKind().isBinary() ? simplify(instruction) : instruction;
+            if (simplified != instruction) {
+                simplifiedCount++;
+            }
+            result.add(simplified);
+        }
+        return result;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 中被改写的指令条数
+     */
+    public int getSimplifiedCount() {
+        return simplifiedCount;
+    }
+
+    private static Instruction simplify(Instruction instruction) {
+        final var result = instruction.getResult();
+        var lhs = instruction.getLHS();
+        var rhs = instruction.getRHS();
+
+        if (lhs instanceof IRImmediate l && rhs instanceof IRImmediate r) {
+            final var folded = switch (instruction.getKind()) {
+                case ADD -> l.getValue() + r.getValue();
+                case SUB -> l.getValue() - r.getValue();
+                case MUL -> l.getValue() * r.getValue();
+                default -> throw new RuntimeException("Not a binary instruction: " + instruction);
+            };
+            return Instruction.createMov(result, IRImmediate.of(folded));
+        }
+
+        switch (instruction.getKind()) {
+            case ADD -> {
+                if (lhs.isImmediate()) {
+                    final var swap = lhs;
+                    lhs = rhs;
+                    rhs = swap;
+                }
+                if (isConstant(rhs, 0)) {
+                    return Instruction.createMov(result, lhs);
+                }
+                return lhs == instruction.getLHS() ? instruction : Instruction.createAdd(result, lhs, rhs);
+            }
+
+            case SUB -> {
+                if (isConstant(rhs, 0)) {
+                    return Instruction.createMov(result, lhs);
+                }
+                if (lhs.isIRVariable() && lhs.equals(rhs)) {
+                    return Instruction.createMov(result, IRImmediate.of(0));
+                }
+                return instruction;
+            }
+
+            case MUL -> {
+                if (lhs.isImmediate()) {
+                    final var swap = lhs;
+                    lhs = rhs;
+                    rhs = swap;
+                }
+                if (isConstant(rhs, 0)) {
+                    return Instruction.createMov(result, IRImmediate.of(0));
+                }
+                if (isConstant(rhs, 1)) {
+                    return Instruction.createMov(result, lhs);
+                }
+                return lhs == instruction.getLHS() ? instruction : Instruction.createMul(result, lhs, rhs);
+            }
+
+            default -> throw new RuntimeException("Not a binary instruction: " + instruction);
+        }
+    }
+
+    private static boolean isConstant(IRValue value, int constant) {
+        return value instanceof IRImmediate immediate && immediate.getValue() == constant;
+    }
+}
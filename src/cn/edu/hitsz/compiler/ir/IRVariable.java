@@ -9,7 +9,6 @@ package cn.edu.hitsz.compiler.ir;
  * IR 变量的等价性由 name 唯一确定.
  */
 public class IRVariable implements IRValue {
-    private static int count = 0;
     private final String name;
 
     private IRVariable(String name) {
@@ -25,10 +24,13 @@ public class IRVariable implements IRValue {
     }
 
     /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
+     * 临时变量的编号由每次编译的上下文分配, 见 {@link cn.edu.hitsz.compiler.CompilationContext#newTemp()}
+     *
+     * @param number 临时变量的编号
+     * @return 一个对应于源语言中的临时变量的 IRVariable
      */
-    public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+    public static IRVariable temp(int number) {
+        return new IRVariable("$" + number);
     }
 
     public String getName() {
@@ -0,0 +1,220 @@
+package cn.edu.hitsz.compiler.ir;
+
+import cn.edu.hitsz.compiler.utils.LineNumbers;
+import cn.edu.hitsz.compiler.utils.LongIntHashMap;
+import cn.edu.hitsz.compiler.utils.ObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 局部值编号 (Local Value Numbering), 用于消除 IR 中的公共子表达式
+ * <br>
+ * 我们的源语言没有分支, 整段 IR 就是一个基本块, 因此只需顺序扫描一遍: 为每个值赋予一个值编号, 以 (指令种类, 左值编号, 右值编号)
+ * 为键查找先前是否已经计算过相同的表达式. 若已计算过, 则将本次计算的结果重定向到先前保存该值的变量上, 并删除本条指令.
+ * ADD 与 MUL 满足交换律, 查表前会将两个操作数的编号按大小排序.
+ * <br>
+ * 表达式表, 常量表与变量编号表均为开放寻址哈希表, 值不装箱. 每个 IR 变量在首次出现时分配一个稠密编号,
+ * 之后每次引用只需按变量查一次编号表 (名字的哈希由 String 缓存, 同一变量对象按引用比较), 其余状态都保存在以该编号为下标的数组中,
+ * 因此整个 Pass 是线性时间的.
+ */
+public class LocalValueNumbering {
+    // 值编号占 29 位, 指令种类放在更高的位上, 拼出的键恒为非负数
+    private static final int VALUE_BITS = 29;
+    private static final long CONSTANT_TAG = 7L;
+
+    private ObjectIntHashMap<IRVariable> variableIds;
+    private LongIntHashMap constants;
+    // 变量编号 -> 变量当前持有的值编号
+    private int[] valueOf;
+    // 变量编号 -> 被删除的临时变量应重定向到的变量
+    private IRVariable[] alias;
+    // 值编号 -> 首个持有该值的变量
+    private IRVariable[] holders;
+    private int valueCount = 0;
+    private int removedCount = 0;
+    private int[] lines;
+
+    /**
+     * 执行局部值编号
+     *
+     * @param instructions 原始 IR
+     * @return 消除公共子表达式后的 IR, 原列表不会被修改
+     */
+    public List<Instruction> run(List<Instruction> instructions) {
+        return run(instructions, null);
+    }
+
+    /**
+     * 执行局部值编号, 同时得到结果中各条指令的行号, 见 {@link #getLines()}
+     *
+     * @param instructions 原始 IR
+     * @param lines        原始 IR 中各条指令的行号, 为 null 时不记录
+     * @return 消除公共子表达式后的 IR, 原列表不会被修改
+     */
+    public List<Instruction> run(List<Instruction> instructions, int[] lines) {
+        final var n = instructions.size();
+        // 每条指令至多引入三个变量, 值编号的数目同样以此为上界
+        final var capacity = 3 * n + 1;
+        if (capacity >= (1 << VALUE_BITS)) {
+            throw new RuntimeException("Too many instructions for value numbering: " + n);
+        }
+
+        final var expressions = new LongIntHashMap(n);
+        constants = new LongIntHashMap();
+        variableIds = new ObjectIntHashMap<>(capacity);
+        valueOf = new int[capacity];
+        Arrays.fill(valueOf, -1);
+        alias = new IRVariable[capacity];
+        holders = new IRVariable[capacity];
+        valueCount = 0;
+        removedCount = 0;
+
+        final var result = new ArrayList<Instruction>(n);
+        final var resultLines = lines == null ? null : new LineNumbers(n);
+        for (int i = 0; i < n; i++) {
+            final var instruction = instructions.get(i);
+            switch (instruction.getKind()) {
+                case ADD, SUB, MUL -> {
+                    final var lhs = rename(instruction.getLHS());
+                    final var rhs = rename(instruction.getRHS());
+                    var lhsValue = valueNumberOf(lhs);
+                    var rhsValue = valueNumberOf(rhs);
+                    if (instruction.getKind() != InstructionKind.SUB && lhsValue > rhsValue) {
+                        final var swap = lhsValue;
+                        lhsValue = rhsValue;
+                        rhsValue = swap;
+                    }
+
+                    final var key = ((long) instruction.getKind().ordinal() << (2 * VALUE_BITS))
+                            | ((long) lhsValue << VALUE_BITS) | rhsValue;
+                    final var target = instruction.getResult();
+                    final var targetId = idOf(target);
+                    final var known = expressions.get(key, -1);
+                    final var holder = known < 0 ? null : holders[known];
+
+                    if (known >= 0 && valueOf[targetId] == known) {
+                        // 目标变量已经持有该值 (如 holder 就是 target), 不必再生成 MOV target, target
+                        removedCount++;
+                    } else if (holder != null && valueOf[idOf(holder)] == known) {
+                        // 已有变量保存着相同的值
+                        valueOf[targetId] = known;
+                        if (target.isTemp() && holder.isTemp()) {
+                            // 临时变量只会被赋值一次, 可以安全地将之后对 target 的引用全部重定向到 holder
+                            alias[targetId] = holder;
+                            removedCount++;
+                        } else {
+                            result.add(Instruction.createMov(target, holder));
+                        }
+                    } else {
+                        final var value = valueCount++;
+                        expressions.put(key, value);
+                        holders[value] = target;
+                        valueOf[targetId] = value;
+                        result.add(rebuild(instruction, lhs, rhs));
+                    }
+                }
+
+                case MOV -> {
+                    final var from = rename(instruction.getFrom());
+                    final var fromValue = valueNumberOf(from);
+                    final var target = instruction.getResult();
+                    final var targetId = idOf(target);
+                    if (valueOf[targetId] == fromValue) {
+                        // 目标变量已经持有该值, 这条复制是多余的
+                        removedCount++;
+                    } else {
+                        valueOf[targetId] = fromValue;
+                        if (holders[fromValue] == null) {
+                            holders[fromValue] = target;
+                        }
+                        result.add(from == instruction.getFrom() ? instruction : Instruction.createMov(target, from));
+                    }
+                }
+
+                case RET -> {
+                    final var value = rename(instruction.getReturnValue());
+                    result.add(value == instruction.getReturnValue() ? instruction : Instruction.createRet(value));
+                }
+
+                default -> throw new RuntimeException("Unknown instruction kind: " + instruction.getKind());
+            }
+            if (resultLines != null) {
+                // 保留或改写的指令沿用原指令的行号
+                resultLines.extend(result.size(), lines[i]);
+            }
+        }
+
+        this.lines = resultLines == null ? null : resultLines.toArray();
+        return result;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 的结果中各条指令的行号, 未给出原始 IR 的行号时为 null
+     */
+    public int[] getLines() {
+        return lines;
+    }
+
+    /**
+     * @return 最近一次 {@code run} 删除的指令条数
+     */
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    private static Instruction rebuild(Instruction origin, IRValue lhs, IRValue rhs) {
+        if (lhs == origin.getLHS() && rhs == origin.getRHS()) {
+            return origin;
+        }
+
+        final var result = origin.getResult();
+        return switch (origin.getKind()) {
+            case ADD -> Instruction.createAdd(result, lhs, rhs);
+            case SUB -> Instruction.createSub(result, lhs, rhs);
+            case MUL -> Instruction.createMul(result, lhs, rhs);
+            default -> throw new RuntimeException("Not a binary instruction: " + origin);
+        };
+    }
+
+    private IRValue rename(IRValue value) {
+        if (value instanceof IRVariable variable) {
+            final var id = variableIds.get(variable, -1);
+            if (id >= 0 && alias[id] != null) {
+                return alias[id];
+            }
+        }
+        return value;
+    }
+
+    private int idOf(IRVariable variable) {
+        final var id = variableIds.get(variable, -1);
+        if (id >= 0) {
+            return id;
+        }
+
+        final var newId = variableIds.size();
+        variableIds.put(variable, newId);
+        return newId;
+    }
+
+    private int valueNumberOf(IRValue value) {
+        if (value instanceof IRImmediate immediate) {
+            final var key = (CONSTANT_TAG << (2 * VALUE_BITS)) | (immediate.getValue() & 0xFFFFFFFFL);
+            var number = constants.get(key, -1);
+            if (number < 0) {
+                number = valueCount++;
+                constants.put(key, number);
+            }
+            return number;
+        }
+
+        // 未赋值就使用的变量, 以其首次出现为准分配一个新的值编号
+        final var id = idOf((IRVariable) value);
+        if (valueOf[id] < 0) {
+            valueOf[id] = valueCount++;
+        }
+        return valueOf[id];
+    }
+}
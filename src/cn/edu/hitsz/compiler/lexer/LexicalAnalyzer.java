@@ -1,10 +1,12 @@
 package cn.edu.hitsz.compiler.lexer;
 
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.CompilationContext;
+import cn.edu.hitsz.compiler.Diagnostic;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
-import java.util.Objects;
+import java.util.Arrays;
 import java.util.stream.StreamSupport;
 
 /**
@@ -15,14 +17,23 @@ import java.util.stream.StreamSupport;
  * @see TokenKind 词法单元类型的实现
  */
 public class LexicalAnalyzer {
-    private final SymbolTable symbolTable;
+    private final CompilationContext context;
+    private final NumberedSymbolTable symbolTable;
     private final ArrayList<Token> tokens = new ArrayList<>();
     private String buffer;
+    private SourcePositions positions;
+    // 各词法单元对应的符号编号, 下标与 tokens 一一对应, 不是标识符的为 -1
+    private int[] symbolIds = new int[16];
+    // 最近一个标识符的符号编号
+    private int lastSymbol = -1;
     private int begin = 0;
+    // 最近一个词法单元首字符的偏移量
+    private int tokenBegin = 0;
     private int end = 0;
 
-    public LexicalAnalyzer(SymbolTable symbolTable) {
-        this.symbolTable = symbolTable;
+    public LexicalAnalyzer(CompilationContext context) {
+        this.context = context;
+        this.symbolTable = context.getSymbolTable();
         this.buffer = null;
     }
 
@@ -34,6 +45,17 @@ public class LexicalAnalyzer {
     public void loadFile(String path) {
         //直接采用完整读入方法
         buffer = FileUtils.readFile(path);
+        positions = new SourcePositions(buffer);
+    }
+
+    /**
+     * 直接加载源代码文本, 供增量编译对单条语句做词法分析
+     *
+     * @param source 源代码
+     */
+    public void loadSource(String source) {
+        buffer = source;
+        positions = new SourcePositions(buffer);
     }
 
     /**
@@ -74,23 +96,25 @@ public class LexicalAnalyzer {
     private Token getNextToken() {
         Token token = null;
         String string;
+        lastSymbol = -1;
         char c = getChar();
+        tokenBegin = begin;
 
-        if (firstId(c) && notEnd()) {
-            while (id(getNextChar()) && notEnd()) {
+        // 标识符与常数可能恰好在源文件末尾结束
+        if (firstId(c)) {
+            while (notEnd() && id(getNextChar())) {
                 end++;
             }
             string = getString(begin, end);
             if (TokenKind.isAllowed(string)) {
                 token = Token.simple(string);
             } else {
-                token = Token.normal("id", string);
-                if (!symbolTable.has(string)) {
-                    symbolTable.add(string);
-                }
+                // 直接在源文本上查找或插入符号, 同名标识符的 token 共享符号表中的同一个字符串
+                lastSymbol = symbolTable.getOrAdd(buffer, begin, end);
+                token = Token.normal("id", symbolTable.get(lastSymbol).getText());
             }
-        } else if (intConst(c) && notEnd()) {
-            while (intConst(getNextChar()) && notEnd()) {
+        } else if (intConst(c)) {
+            while (notEnd() && intConst(getNextChar())) {
                 end++;
             }
             string = getString(begin, end);
@@ -102,22 +126,45 @@ public class LexicalAnalyzer {
                 string = String.valueOf(c);
             }
             token = Token.simple(string);
+        } else if (!blankCharacter(c)) {
+            // 无法识别的字符: 报告错误后跳过, 继续分析之后的字符
+            reportUnknownCharacter(c, tokenBegin);
         }
 
         begin = end;
         return token;
     }
 
+    private void reportUnknownCharacter(char c, int offset) {
+        context.report(new Diagnostic("lexer", positions.line(offset), positions.column(offset), -1,
+                "unknown character '%s'".formatted(c)));
+    }
+
     /**
      * 执行词法分析, 准备好用于返回的 token 列表 <br>
      * 需要维护实验一所需的符号表条目, 而得在语法分析中才能确定的符号表条目的成员可以先设置为 null
      */
     public void run() {
         while (notEnd()) {
-            tokens.add(getNextToken());
+            // 空白与无法识别的字符不产生词法单元
+            final var token = getNextToken();
+            if (token != null) {
+                addSymbolId(lastSymbol);
+                tokens.add(token);
+                positions.add(tokenBegin);
+            }
         }
         //添加终止符
+        addSymbolId(-1);
         tokens.add(Token.eof());
+        positions.add(buffer.length());
+    }
+
+    private void addSymbolId(int id) {
+        if (tokens.size() == symbolIds.length) {
+            symbolIds = Arrays.copyOf(symbolIds, 2 * symbolIds.length);
+        }
+        symbolIds[tokens.size()] = id;
     }
 
     /**
@@ -126,10 +173,28 @@ public class LexicalAnalyzer {
      * @return Token 列表
      */
     public Iterable<Token> getTokens() {
-        tokens.removeIf(Objects::isNull);
         return tokens;
     }
 
+    /**
+     * 获得各词法单元在源文件中的位置, 下标与 {@link #getTokens()} 一一对应, 保证在调用了 run 方法之后调用
+     *
+     * @return 词法单元的位置
+     */
+    public SourcePositions getPositions() {
+        return positions;
+    }
+
+    /**
+     * 获得各词法单元对应的符号编号, 下标与 {@link #getTokens()} 一一对应, 保证在调用了 run 方法之后调用.
+     * 词法分析时已经查找过符号表, 之后的阶段凭编号直接取得条目, 不必再按名字查找.
+     *
+     * @return 符号编号, 不是标识符的词法单元为 -1
+     */
+    public int[] getSymbolIds() {
+        return Arrays.copyOf(symbolIds, tokens.size());
+    }
+
     public void dumpTokens(String path) {
         FileUtils.writeLines(
                 path,
@@ -159,16 +224,16 @@ public class LexicalAnalyzer {
     }
 
     /**
-     * 判断是否为[a-zA-Z]
+     * 判断是否为[a-zA-Z0-9_]
      */
     private boolean id(char c) {
-        return ((c >= 'a') && (c <= 'z') || ((c >= 'A') && (c <= 'Z')));
+        return (firstId(c) || intConst(c));
     }
 
     /**
      * 判断是否为[a-zA-Z_]
      */
     private boolean firstId(char c) {
-        return (id(c) || (c == '_'));
+        return ((c >= 'a') && (c <= 'z') || ((c >= 'A') && (c <= 'Z')) || (c == '_'));
     }
 }
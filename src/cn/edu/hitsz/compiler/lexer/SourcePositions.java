@@ -0,0 +1,105 @@
+package cn.edu.hitsz.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * 词法单元在源文件中的位置
+ * <br>
+ * {@link Token} 本身不带位置, 各词法单元的起始偏移量按下标存放在一个 int 数组中, 每个词法单元只多占 4 字节.
+ * 行号与列号只在需要时计算: 第一次查询时扫描一遍源文件建立行首偏移量的数组, 之后每次查询只是一次二分查找,
+ * 因此不报告错误, 不输出行号信息的编译不为行列号付出任何代价.
+ * <br>
+ * 行号与列号都从 1 开始, 列号按字符计, 制表符也只算一列. 偏移量相对于 {@link cn.edu.hitsz.compiler.utils.FileUtils#readFile}
+ * 读入的文本, 其中的行尾已统一为 \n.
+ */
+public final class SourcePositions {
+    private final String source;
+    private int[] tokenOffsets;
+    private int tokenCount;
+    // 各行行首的偏移量, 第一次查询行列号时建立
+    private int[] lineStarts;
+
+    /**
+     * @param source       源文件的文本
+     * @param tokenOffsets 各词法单元的起始偏移量, 只使用前 tokenCount 个, 之后不应再被修改
+     * @param tokenCount   词法单元个数
+     */
+    public SourcePositions(String source, int[] tokenOffsets, int tokenCount) {
+        this.source = source;
+        this.tokenOffsets = tokenOffsets;
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * 供词法分析器边分析边追加词法单元
+     *
+     * @param source 源文件的文本
+     */
+    SourcePositions(String source) {
+        this(source, new int[16], 0);
+    }
+
+    void add(int offset) {
+        if (tokenCount == tokenOffsets.length) {
+            tokenOffsets = Arrays.copyOf(tokenOffsets, 2 * tokenCount);
+        }
+        tokenOffsets[tokenCount++] = offset;
+    }
+
+    /**
+     * @return 词法单元个数, 包括末尾的 EOF
+     */
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @param token 词法单元的下标
+     * @return 该词法单元在源文件中的起始偏移量, EOF 的偏移量为源文件的长度
+     */
+    public int offset(int token) {
+        if (token < 0 || token >= tokenCount) {
+            throw new RuntimeException("Illegal token index: " + token);
+        }
+        return tokenOffsets[token];
+    }
+
+    /**
+     * @param offset 源文件中的偏移量
+     * @return 所在行
+     */
+    public int line(int offset) {
+        final var lines = lineStarts();
+        final var index = Arrays.binarySearch(lines, offset);
+        // 未找到时 binarySearch 返回 -(插入点) - 1, 插入点之前的一行即所在行
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @param offset 源文件中的偏移量
+     * @return 所在列
+     */
+    public int column(int offset) {
+        return offset - lineStarts()[line(offset) - 1] + 1;
+    }
+
+    private int[] lineStarts() {
+        if (lineStarts == null) {
+            var count = 1;
+            for (int i = 0; i < source.length(); i++) {
+                if (source.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+            final var starts = new int[count];
+            var line = 1;
+            for (int i = 0; i < source.length(); i++) {
+                if (source.charAt(i) == '\n') {
+                    starts[line++] = i + 1;
+                }
+            }
+            lineStarts = starts;
+        }
+        return lineStarts;
+    }
+}
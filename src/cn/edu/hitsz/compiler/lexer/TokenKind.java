@@ -26,8 +26,8 @@ import java.util.Map;
  * @see cn.edu.hitsz.compiler.parser.table.Production 产生式 - BNF 语法描述的基本要素
  */
 public class TokenKind extends Term {
-    // 允许用作 TokenKind 的 id 的字符串集合
-    private static final Map<String, TokenKind> allowed = new HashMap<>();
+    // 允许用作 TokenKind 的 id 的字符串集合, 读取完毕后整体发布, 之后不再改变, 可以被多个线程共享
+    private static volatile Map<String, TokenKind> allowed = Map.of();
     private static final TokenKind eof = new TokenKind("$", -1);
     private final int code;
 
@@ -37,13 +37,14 @@ public class TokenKind extends Term {
     }
 
     /**
-     * 从码点文件中读取允许的标识符集合
+     * 从码点文件中读取允许的标识符集合. 整个 JVM 中只读取一次, 重复调用直接返回
      */
-    public static void loadTokenKinds() {
+    public static synchronized void loadTokenKinds() {
         if (!allowed.isEmpty()) {
-            throw new RuntimeException("Can not set allowed twice");
+            return;
         }
 
+        final var loaded = new HashMap<String, TokenKind>();
         final var lines = FileUtils.readLines(FilePathConfig.CODING_MAP_PATH);
         for (final var line : lines) {
             // 码点文件每行形如:
@@ -53,11 +54,12 @@ public class TokenKind extends Term {
             final var code = Integer.parseInt(words[0]);
             final var id = words[1];
 
-            allowed.put(id, new TokenKind(id, code));
+            loaded.put(id, new TokenKind(id, code));
         }
 
         // EOF
-        allowed.put("$", eof);
+        loaded.put("$", eof);
+        allowed = Collections.unmodifiableMap(loaded);
     }
 
     /**
@@ -76,7 +78,7 @@ public class TokenKind extends Term {
      * @return 一个标识符到 TokenKind 的 Map, 其键集包含了所有允许的标识符
      */
     public static Map<String, TokenKind> allAllowedTokenKinds() {
-        return Collections.unmodifiableMap(allowed);
+        return allowed;
     }
 
     /**
@@ -1,10 +1,11 @@
 package cn.edu.hitsz.compiler.parser;
 
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
 
 /**
  * LR 驱动程序动作观察者, 你不应该修改此文件
@@ -32,6 +33,18 @@ public interface ActionObserver {
      */
     void whenShift(Status currentStatus, Token currentToken);
 
+    /**
+     * 同 {@link #whenShift(Status, Token)}, 另外给出当前词法单元在输入中的下标, 便于取得与词法单元平行存放的信息,
+     * 如 {@link CompilationContext#symbolOf} 中的符号编号. 驱动程序调用的是此函数, 默认忽略下标.
+     *
+     * @param currentStatus 当前的状态
+     * @param currentToken  当前的词法单元
+     * @param tokenIndex    当前词法单元的下标, 未知时为 -1
+     */
+    default void whenShift(Status currentStatus, Token currentToken, int tokenIndex) {
+        whenShift(currentStatus, currentToken);
+    }
+
     /**
      * 当驱动程序执行 Reduce 动作时会调用此函数. Goto 到的新状态可以直接从参数中获取:
      * {@code currentStatus.getGoto(production.head()) }
@@ -48,10 +61,28 @@ public interface ActionObserver {
      */
     void whenAccept(Status currentStatus);
 
+    /**
+     * 当驱动程序从语法错误中恢复时会调用此函数: 出错语句中已经移入与规约的部分被丢弃, 驱动程序回到语句的边界, 从下一条语句继续分析.
+     * 观察者为出错语句压入的中间结果不会再被任何规约使用, 维护了栈的观察者可以在此丢弃它们. 默认什么也不做.
+     *
+     * @param currentStatus 恢复后栈顶的状态
+     */
+    default void whenRecover(Status currentStatus) {
+    }
+
     /**
      * 当驱动程序接受符号表时会调用此函数, 实现此接口的类可以自行决定是否存储这个符号表
      *
      * @param table 符号表
      */
-    void setSymbolTable(SymbolTable table);
+    void setSymbolTable(NumberedSymbolTable table);
+
+    /**
+     * 设置本次编译的上下文, 默认只取出其中的符号表. 需要上下文中其它信息 (如临时变量编号) 的观察者可以覆盖此方法.
+     *
+     * @param context 编译上下文
+     */
+    default void setContext(CompilationContext context) {
+        setSymbolTable(context.getSymbolTable());
+    }
 }
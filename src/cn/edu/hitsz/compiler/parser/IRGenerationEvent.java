@@ -0,0 +1,16 @@
+package cn.edu.hitsz.compiler.parser;
+
+import jdk.jfr.*;
+
+/**
+ * {@link IRGenerator} 在语法分析接受时产生的计数事件
+ */
+@Name("cn.edu.hitsz.compiler.IRGeneration")
+@Label("IR Generation")
+@Category({"Compiler", "Parser"})
+@Description("Number of IR instructions produced by one parse")
+@StackTrace(false)
+public class IRGenerationEvent extends Event {
+    @Label("Instructions")
+    public int instructions;
+}
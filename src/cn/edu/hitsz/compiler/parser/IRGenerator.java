@@ -1,5 +1,6 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
@@ -7,10 +8,12 @@ import cn.edu.hitsz.compiler.ir.Instruction;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.LineNumbers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
 
@@ -23,20 +26,52 @@ public class IRGenerator implements ActionObserver {
 
     private final ArrayList<Instruction> instructions = new ArrayList<>();
     private final Stack<IRValue> irValueStack = new Stack<>();
-    private SymbolTable symbolTable;
+    private NumberedSymbolTable symbolTable;
+    private CompilationContext context;
+    // 符号编号 -> 该源语言变量对应的 IRVariable, 同一变量的每次出现都复用同一个对象
+    private IRVariable[] variables = new IRVariable[0];
+    // 开启 --line-info 时各条指令所属语句所在的行, 否则为 null
+    private LineNumbers lines;
+    // 下一个移入的词法单元是语句的开头
+    private boolean statementBegins = true;
+    private int statementLine = 0;
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
+        whenShift(currentStatus, currentToken, -1);
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken, int tokenIndex) {
+        if (lines != null && tokenIndex >= 0) {
+            if (statementBegins) {
+                final var positions = context.getSourcePositions();
+                statementLine = positions.line(positions.offset(tokenIndex));
+            }
+            statementBegins = currentToken.getKindId().equals("Semicolon");
+        }
+
         var text = currentToken.getText();
         if (currentToken.getKindId().equals("IntConst")) { // 立即数
             irValueStack.add(IRImmediate.of(parseInt(text)));
         } else if (currentToken.getKindId().equals("id")) { // 变量
-            if (symbolTable.has(text)) {
-                irValueStack.add(IRVariable.named(text));
+            final var id = context != null ? context.symbolOf(tokenIndex, currentToken) : symbolTable.find(text);
+            if (id >= 0) {
+                irValueStack.add(variable(id));
             }
         }
     }
 
+    private IRVariable variable(int id) {
+        if (id >= variables.length) {
+            variables = Arrays.copyOf(variables, Math.max(symbolTable.size(), id + 1));
+        }
+        if (variables[id] == null) {
+            variables[id] = IRVariable.named(symbolTable.get(id).getText());
+        }
+        return variables[id];
+    }
+
     @Override
     public void whenReduce(Status currentStatus, Production production) {
         switch (production.index()) {
@@ -50,44 +85,76 @@ public class IRGenerator implements ActionObserver {
                 instructions.add(Instruction.createRet(op1));
             }
             case 8 -> { // E -> E + A
-                var temp = IRVariable.temp();
+                var temp = context.newTemp();
                 var op1 = irValueStack.pop();
                 var op2 = irValueStack.pop();
                 instructions.add(Instruction.createAdd(temp, op2, op1));
                 irValueStack.add(temp);
             }
             case 9 -> { // E -> E - A
-                var temp = IRVariable.temp();
+                var temp = context.newTemp();
                 var op1 = irValueStack.pop();
                 var op2 = irValueStack.pop();
                 instructions.add(Instruction.createSub(temp, op2, op1));
                 irValueStack.add(temp);
             }
             case 11 -> { // A -> A * B
-                var temp = IRVariable.temp();
+                var temp = context.newTemp();
                 var op1 = irValueStack.pop();
                 var op2 = irValueStack.pop();
                 instructions.add(Instruction.createMul(temp, op2, op1));
                 irValueStack.add(temp);
             }
         }
+        if (lines != null) {
+            // 规约时语句的词法单元都已移入, 这次规约生成的指令都属于最近开始的语句
+            lines.extend(instructions.size(), statementLine);
+        }
     }
 
 
+    @Override
+    public void whenRecover(Status currentStatus) {
+        // 语句边界上没有等待规约的值
+        irValueStack.clear();
+        statementBegins = true;
+    }
+
     @Override
     public void whenAccept(Status currentStatus) {
         irValueStack.clear();
+        final var event = new IRGenerationEvent();
+        if (event.isEnabled()) {
+            event.instructions = instructions.size();
+            event.commit();
+        }
     }
 
     @Override
-    public void setSymbolTable(SymbolTable table) {
+    public void setSymbolTable(NumberedSymbolTable table) {
         symbolTable = table;
     }
 
+    @Override
+    public void setContext(CompilationContext context) {
+        ActionObserver.super.setContext(context);
+        this.context = context;
+        if (context.getOptions().isLineInfo() && context.getSourcePositions() != null) {
+            lines = new LineNumbers(context.getSourcePositions().tokenCount() / 2);
+        }
+    }
+
     public List<Instruction> getIR() {
         return instructions;
     }
 
+    /**
+     * @return 各条指令所属语句的第一个词法单元所在的行, 与 {@link #getIR()} 一一对应; 未开启 {@code --line-info} 时为 null
+     */
+    public int[] getLines() {
+        return lines == null ? null : lines.toArray();
+    }
+
     public void dumpIR(String path) {
         FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
     }
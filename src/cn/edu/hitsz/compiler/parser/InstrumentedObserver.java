@@ -0,0 +1,88 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.CompilationContext;
+import cn.edu.hitsz.compiler.lexer.Token;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
+import cn.edu.hitsz.compiler.utils.Instrumentation;
+
+/**
+ * 统计另一个观察者的回调次数与耗时, 只在开启统计时由 {@link SyntaxAnalyzer} 包装
+ * <br>
+ * 每次移入与规约都会回调, 因此每次回调只读两次 {@link System#nanoTime()}, 累加到本对象的字段中, 不读取 CPU 时间与分配字节数,
+ * 也不提交 JFR 事件. 语法分析结束时由 {@link #flush()} 一次性记为名为 parse/类名 的阶段, 其 CPU 时间与分配字节数记为 -1,
+ * 这部分数据只在外层的 parse 阶段中整体统计.
+ */
+class InstrumentedObserver implements ActionObserver {
+    private final ActionObserver observer;
+    private final Instrumentation instrumentation;
+    private final String phase;
+    private long count = 0;
+    private long wallNanos = 0;
+
+    InstrumentedObserver(ActionObserver observer, Instrumentation instrumentation) {
+        this.observer = observer;
+        this.instrumentation = instrumentation;
+        this.phase = "parse/" + observer.getClass().getSimpleName();
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken) {
+        final var begin = System.nanoTime();
+        observer.whenShift(currentStatus, currentToken);
+        wallNanos += System.nanoTime() - begin;
+        count++;
+    }
+
+    @Override
+    public void whenShift(Status currentStatus, Token currentToken, int tokenIndex) {
+        final var begin = System.nanoTime();
+        observer.whenShift(currentStatus, currentToken, tokenIndex);
+        wallNanos += System.nanoTime() - begin;
+        count++;
+    }
+
+    @Override
+    public void whenReduce(Status currentStatus, Production production) {
+        final var begin = System.nanoTime();
+        observer.whenReduce(currentStatus, production);
+        wallNanos += System.nanoTime() - begin;
+        count++;
+    }
+
+    @Override
+    public void whenAccept(Status currentStatus) {
+        final var begin = System.nanoTime();
+        observer.whenAccept(currentStatus);
+        wallNanos += System.nanoTime() - begin;
+        count++;
+    }
+
+    @Override
+    public void whenRecover(Status currentStatus) {
+        final var begin = System.nanoTime();
+        observer.whenRecover(currentStatus);
+        wallNanos += System.nanoTime() - begin;
+        count++;
+    }
+
+    /**
+     * 将累计的回调次数与耗时记入阶段统计并清零, 在一次语法分析结束时调用
+     */
+    void flush() {
+        instrumentation.record(phase, count, wallNanos);
+        count = 0;
+        wallNanos = 0;
+    }
+
+    @Override
+    public void setSymbolTable(NumberedSymbolTable table) {
+        observer.setSymbolTable(table);
+    }
+
+    @Override
+    public void setContext(CompilationContext context) {
+        observer.setContext(context);
+    }
+}
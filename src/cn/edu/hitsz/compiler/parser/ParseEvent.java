@@ -0,0 +1,22 @@
+package cn.edu.hitsz.compiler.parser;
+
+import jdk.jfr.*;
+
+/**
+ * 一次完整的语法分析, 持续时间包括各观察者的回调, 带有移入, 规约与词法单元的计数
+ */
+@Name("cn.edu.hitsz.compiler.Parse")
+@Label("Parse")
+@Category({"Compiler", "Parser"})
+@Description("One run of the LR driver with its action counters")
+@StackTrace(false)
+public class ParseEvent extends Event {
+    @Label("Tokens")
+    public int tokens;
+
+    @Label("Shifts")
+    public int shifts;
+
+    @Label("Reduces")
+    public int reduces;
+}
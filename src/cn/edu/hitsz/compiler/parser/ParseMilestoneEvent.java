@@ -0,0 +1,25 @@
+package cn.edu.hitsz.compiler.parser;
+
+import jdk.jfr.*;
+
+/**
+ * 语法分析进度的采样事件, 由 {@link SyntaxAnalyzer} 每移入若干个词法单元产生一次, 间隔见 {@code --jfr-parse-sample}
+ */
+@Name("cn.edu.hitsz.compiler.ParseMilestone")
+@Label("Parse Milestone")
+@Category({"Compiler", "Parser"})
+@Description("Sampled progress of the LR driver")
+@StackTrace(false)
+public class ParseMilestoneEvent extends Event {
+    @Label("Tokens")
+    public int tokens;
+
+    @Label("Shifts")
+    public int shifts;
+
+    @Label("Reduces")
+    public int reduces;
+
+    @Label("Stack Depth")
+    public int stackDepth;
+}
@@ -0,0 +1,187 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LR 驱动程序的动作统计, 用于找出热点状态与产生式
+ * <br>
+ * 观察者看不到查表时的状态与向前看符号, 也看不到状态栈, 因此统计由 {@link SyntaxAnalyzer} 在驱动循环中直接记录:
+ * 每次查 action 表时按 (状态, 终结符) 计数, 每次规约按产生式计数, 并记录状态栈的最大深度.
+ * 计数都存放在基本类型数组中, action 表的计数以 状态编号 * 终结符个数 + 终结符列号 为下标, 状态数随遇到的最大编号增长.
+ * <br>
+ * 由 {@code --parser-stats} 开启, 见 {@link #dump}.
+ */
+public class ParserStatistics {
+    // 列号 -> 终结符, 列号为码点 + 1, EOF 的码点为 -1, 位于第 0 列
+    private final TokenKind[] terminals;
+    private final List<Production> productions;
+    private int[] actionHits = new int[0];
+    // 以产生式编号为下标, 编号从 1 开始
+    private final int[] reductions;
+    private int stateCount = 0;
+    private int maxStackDepth = 0;
+    private long actionCount = 0;
+
+    public ParserStatistics() {
+        final var kinds = TokenKind.allAllowedTokenKinds().values();
+        final var maxCode = kinds.stream().mapToInt(TokenKind::getCode).max().orElse(-1);
+        this.terminals = new TokenKind[maxCode + 2];
+        for (final var kind : kinds) {
+            terminals[kind.getCode() + 1] = kind;
+        }
+        this.productions = GrammarInfo.getProductionsInOrder();
+        this.reductions = new int[productions.size() + 1];
+    }
+
+    /**
+     * 记录一次 action 表查询
+     */
+    void action(int state, TokenKind terminal) {
+        if (state >= stateCount) {
+            stateCount = Math.max(state + 1, 2 * stateCount);
+            actionHits = Arrays.copyOf(actionHits, stateCount * terminals.length);
+        }
+        actionHits[state * terminals.length + terminal.getCode() + 1]++;
+        actionCount++;
+    }
+
+    /**
+     * 记录一次规约
+     */
+    void reduce(Production production) {
+        reductions[production.index()]++;
+    }
+
+    /**
+     * 记录压栈后的状态栈深度
+     */
+    void stackDepth(int depth) {
+        if (depth > maxStackDepth) {
+            maxStackDepth = depth;
+        }
+    }
+
+    /**
+     * @return 状态 state 遇到终结符 terminal 时查 action 表的次数
+     */
+    public int getActionHits(int state, TokenKind terminal) {
+        return state < stateCount ? actionHits[state * terminals.length + terminal.getCode() + 1] : 0;
+    }
+
+    /**
+     * @return 按 production 规约的次数
+     */
+    public int getReductions(Production production) {
+        return reductions[production.index()];
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * @return action 表查询的总次数
+     */
+    public long getActionCount() {
+        return actionCount;
+    }
+
+    /**
+     * @return 状态 state 上 action 表查询的总次数
+     */
+    public int getStateHits(int state) {
+        var hits = 0;
+        for (int column = 0; state < stateCount && column < terminals.length; column++) {
+            hits += actionHits[state * terminals.length + column];
+        }
+        return hits;
+    }
+
+    /**
+     * 按热度排列的状态编号, 供按热度重排分析表时使用: 热点状态排在前面, 相邻存放; 从未访问的状态不出现
+     *
+     * @return 按查询次数降序排列的状态编号, 次数相同时按编号升序
+     */
+    public int[] hotStateOrder() {
+        final var hits = new int[stateCount];
+        var visited = 0;
+        for (int state = 0; state < stateCount; state++) {
+            hits[state] = getStateHits(state);
+            if (hits[state] > 0) {
+                visited++;
+            }
+        }
+
+        // 次数取反放在高 32 位, 编号放在低 32 位, 排序一次即可
+        final var keys = new long[visited];
+        var k = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (hits[state] > 0) {
+                keys[k++] = ((long) -hits[state] << 32) | state;
+            }
+        }
+        Arrays.sort(keys);
+
+        final var order = new int[visited];
+        for (int i = 0; i < visited; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * 输出热度报告: 总览, 按热度排列的状态, 非零的 (状态, 终结符) 计数, 各产生式的规约次数, 以及热点状态的排列顺序
+     *
+     * @param path 输出路径
+     */
+    public void dump(String path) {
+        final var lines = new ArrayList<String>();
+        lines.add("actions=%d reductions=%d max-stack-depth=%d".formatted(
+                actionCount, Arrays.stream(reductions).asLongStream().sum(), maxStackDepth));
+
+        final var order = hotStateOrder();
+        lines.add("");
+        lines.add("# state hits share cumulative");
+        var cumulative = 0L;
+        for (final var state : order) {
+            final var hits = getStateHits(state);
+            cumulative += hits;
+            lines.add("%d %d %.1f%% %.1f%%".formatted(state, hits, 100.0 * hits / actionCount, 100.0 * cumulative / actionCount));
+        }
+
+        lines.add("");
+        lines.add("# state terminal hits");
+        for (final var state : order) {
+            for (int column = 0; column < terminals.length; column++) {
+                final var hits = actionHits[state * terminals.length + column];
+                if (hits > 0) {
+                    final var name = column == 0 ? TokenKind.eof().getIdentifier() : terminals[column].getIdentifier();
+                    lines.add("%d %s %d".formatted(state, name, hits));
+                }
+            }
+        }
+
+        lines.add("");
+        lines.add("# reductions production");
+        final var byCount = productions.stream()
+                .filter(production -> reductions[production.index()] > 0)
+                .sorted((a, b) -> Integer.compare(reductions[b.index()], reductions[a.index()]))
+                .toList();
+        for (final var production : byCount) {
+            lines.add("%d %s".formatted(reductions[production.index()], production));
+        }
+
+        lines.add("");
+        lines.add("# hot-state-order");
+        lines.add(String.join(" ", Arrays.stream(order).mapToObj(Integer::toString).toList()));
+
+        FileUtils.writeLines(path, lines);
+    }
+}
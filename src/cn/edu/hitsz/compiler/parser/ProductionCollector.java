@@ -3,7 +3,7 @@ package cn.edu.hitsz.compiler.parser;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
@@ -50,7 +50,7 @@ public class ProductionCollector implements ActionObserver {
     }
 
     @Override
-    public void setSymbolTable(SymbolTable table) {
+    public void setSymbolTable(NumberedSymbolTable table) {
         // do nothing
     }
 }
@@ -1,32 +1,40 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.CompilationContext;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.symtab.NumberedSymbolTable;
 import cn.edu.hitsz.compiler.symtab.SourceCodeType;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.Stack;
 
 public class SemanticAnalyzer implements ActionObserver {
     private final Stack<SourceCodeType> sourceCodeTypeStack = new Stack<>();
-    private final Stack<Token> tokenStack = new Stack<>();
-    private SymbolTable symbolTable;
+    private NumberedSymbolTable symbolTable;
+    private CompilationContext context;
+    // 最近移入的标识符的符号编号, 规约 S -> D id 时它就是被声明的符号
+    private int lastSymbol = -1;
 
     @Override
     public void whenAccept(Status currentStatus) {
         sourceCodeTypeStack.clear();
-        tokenStack.clear();
+        lastSymbol = -1;
+    }
+
+    @Override
+    public void whenRecover(Status currentStatus) {
+        // 语句边界上没有等待规约的类型与标识符
+        sourceCodeTypeStack.clear();
+        lastSymbol = -1;
     }
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
         switch (production.index()) {
             case 4 -> { // S -> D id;
-                var id = tokenStack.pop();
-                if (symbolTable.has(id.getText())) {
-                    var symbolTableEntry = symbolTable.get(id.getText());
-                    symbolTableEntry.setType(sourceCodeTypeStack.pop());
+                if (lastSymbol >= 0) {
+                    symbolTable.get(lastSymbol).setType(sourceCodeTypeStack.pop());
                 }
             }
             case 5 -> { // D -> int;
@@ -37,12 +45,25 @@ public class SemanticAnalyzer implements ActionObserver {
 
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
-        tokenStack.add(currentToken);
+        whenShift(currentStatus, currentToken, -1);
     }
 
     @Override
-    public void setSymbolTable(SymbolTable table) {
+    public void whenShift(Status currentStatus, Token currentToken, int tokenIndex) {
+        if (currentToken.getKindId().equals("id")) {
+            lastSymbol = context != null ? context.symbolOf(tokenIndex, currentToken) : symbolTable.find(currentToken.getText());
+        }
+    }
+
+    @Override
+    public void setSymbolTable(NumberedSymbolTable table) {
         symbolTable = table;
     }
+
+    @Override
+    public void setContext(CompilationContext context) {
+        ActionObserver.super.setContext(context);
+        this.context = context;
+    }
 }
 
@@ -1,44 +1,58 @@
 package cn.edu.hitsz.compiler.parser;
 
+import cn.edu.hitsz.compiler.CompilationContext;
+import cn.edu.hitsz.compiler.Diagnostic;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.Action;
 import cn.edu.hitsz.compiler.parser.table.LRTable;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.parser.table.Term;
-import cn.edu.hitsz.compiler.symtab.SymbolTable;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Stack;
+import java.util.stream.Collectors;
 
 /**
  * LR 语法分析驱动程序
  * <br>
  * 该程序接受词法单元串与 LR 分析表 (action 和 goto 表), 按表对词法单元流进行分析, 执行对应动作, 并在执行动作时通知各注册的观察者.
  * <br>
+ * 遇到语法错误时记录一个 {@link Diagnostic} 并继续分析:
+ * <ol>
+ *     <li>若出错的词法单元不是分号, 且删去它之后下一个词法单元在当前状态下可以被接受, 则删去它</li>
+ *     <li>否则进入恐慌模式: 跳过直到下一个分号 (含) 的所有词法单元, 弹栈直到栈顶为分号或栈底, 即回到语句的边界,
+ *     通知观察者 {@link ActionObserver#whenRecover}, 再从下一条语句继续</li>
+ * </ol>
+ * 恐慌模式恢复后还没有移入任何词法单元就到达输入末尾时不再重复报告. 输入末尾的错误无法恢复, 报告后即结束分析.
+ * <br>
  * 你应当按照被挖空的方法的文档实现对应方法, 你可以随意为该类添加你需要的私有成员对象, 但不应该再为此类添加公有接口, 也不应该改动未被挖空的方法,
  * 除非你已经同助教充分沟通, 并能证明你的修改的合理性, 且令助教确定可能被改动的评测方法. 随意修改该类的其它部分有可能导致自动评测出错而被扣分.
  */
 public class SyntaxAnalyzer {
-    private final SymbolTable symbolTable;
+    private final CompilationContext context;
     private final List<ActionObserver> observers = new ArrayList<>();
     private final List<Token> tokenList = new ArrayList<>();
     private LRTable lrTable;
     //
 
-    public SyntaxAnalyzer(SymbolTable symbolTable) {
-        this.symbolTable = symbolTable;
+    public SyntaxAnalyzer(CompilationContext context) {
+        this.context = context;
     }
 
     /**
-     * 注册新的观察者
+     * 注册新的观察者. 开启阶段统计时, 观察者的回调耗时另行记录
      *
      * @param observer 观察者
      */
     public void registerObserver(ActionObserver observer) {
-        observers.add(observer);
-        observer.setSymbolTable(symbolTable);
+        final var instrumentation = context.getInstrumentation();
+        observers.add(instrumentation.isEnabled() ? new InstrumentedObserver(observer, instrumentation) : observer);
+        observer.setContext(context);
     }
 
     /**
@@ -48,8 +62,19 @@ public class SyntaxAnalyzer {
      * @param currentToken  当前词法单元
      */
     public void callWhenInShift(Status currentStatus, Token currentToken) {
+        callWhenInShift(currentStatus, currentToken, -1);
+    }
+
+    /**
+     * 在执行 shift 动作时通知各个观察者
+     *
+     * @param currentStatus 当前状态
+     * @param currentToken  当前词法单元
+     * @param tokenIndex    当前词法单元的下标, 未知时为 -1
+     */
+    public void callWhenInShift(Status currentStatus, Token currentToken, int tokenIndex) {
         for (final var listener : observers) {
-            listener.whenShift(currentStatus, currentToken);
+            listener.whenShift(currentStatus, currentToken, tokenIndex);
         }
     }
 
@@ -65,6 +90,17 @@ public class SyntaxAnalyzer {
         }
     }
 
+    /**
+     * 在从语法错误中恢复时通知各个观察者
+     *
+     * @param currentStatus 恢复后栈顶的状态
+     */
+    public void callWhenInRecover(Status currentStatus) {
+        for (final var listener : observers) {
+            listener.whenRecover(currentStatus);
+        }
+    }
+
     /**
      * 在执行 accept 动作时通知各个观察者
      *
@@ -88,6 +124,18 @@ public class SyntaxAnalyzer {
     }
 
     public void run() {
+        // 移入, 规约与词法单元的计数, 只在 JFR 记录 ParseEvent 或 ParseMilestoneEvent 时提交
+        final var parseEvent = new ParseEvent();
+        parseEvent.begin();
+        final var sampleInterval = context.getOptions().getParseSampleInterval();
+        // 开启 --parser-stats 时记录各状态与产生式的热度
+        final var statistics = context.getParserStatistics();
+        var shifts = 0;
+        var reduces = 0;
+        final var semicolon = TokenKind.fromString("Semicolon");
+        // 上一次恐慌模式恢复之后是否移入过词法单元
+        var shiftedSinceRecovery = true;
+
         // 你需要根据上面的输入来实现 LR 语法分析的驱动程序
         // 请分别在遇到 Shift, Reduce, Accept 的时候调用上面的 callWhenInShift, callWhenInReduce, callWhenInAccept
         // 否则用于为实验二打分的产生式输出可能不会正常工作
@@ -104,18 +152,36 @@ public class SyntaxAnalyzer {
         Stack<StateToken> stateTokens = new Stack<>();
         //初始化
         stateTokens.add(new StateToken(lrTable.getInit(), TokenKind.eof()));
+        parse:
         for (int i = 0; i < tokenList.size(); ) {
             var token = tokenList.get(i);
             var action = lrTable.getAction(stateTokens.peek().status, token);
+            if (statistics != null) {
+                statistics.action(stateTokens.peek().status.index(), token.getKind());
+            }
             switch (action.getKind()) {
                 case Accept -> {
                     callWhenInAccept(stateTokens.peek().status);
-                    return;
+                    break parse;
                 }
                 case Shift -> {
-                    callWhenInShift(action.getStatus(), token);
+                    callWhenInShift(action.getStatus(), token, i);
                     stateTokens.add(new StateToken(action.getStatus(), token.getKind()));
                     i++;
+                    shiftedSinceRecovery = true;
+                    if (statistics != null) {
+                        statistics.stackDepth(stateTokens.size());
+                    }
+                    if (++shifts % sampleInterval == 0) {
+                        final var milestone = new ParseMilestoneEvent();
+                        if (milestone.isEnabled()) {
+                            milestone.tokens = tokenList.size();
+                            milestone.shifts = shifts;
+                            milestone.reduces = reduces;
+                            milestone.stackDepth = stateTokens.size();
+                            milestone.commit();
+                        }
+                    }
                 }
                 case Reduce -> {
                     var production = action.getProduction();
@@ -123,12 +189,89 @@ public class SyntaxAnalyzer {
                         stateTokens.pop();
                     }
                     callWhenInReduce(stateTokens.peek().status, production);
+                    reduces++;
                     stateTokens.add(new StateToken(lrTable.getGoto(stateTokens.peek().status, production.head()), production.head()));
+                    if (statistics != null) {
+                        statistics.reduce(production);
+                        statistics.stackDepth(stateTokens.size());
+                    }
                 }
                 case Error -> {
-                    throw new RuntimeException("Error");
+                    final var eof = token.getKind().equals(TokenKind.eof());
+                    if (eof && !shiftedSinceRecovery) {
+                        break parse;
+                    }
+                    context.report(syntaxError(i, describeError(stateTokens.peek().status, token)));
+                    if (eof) {
+                        break parse;
+                    }
+
+                    // 删去出错的词法单元
+                    if (!token.getKind().equals(semicolon)
+                            && lrTable.getAction(stateTokens.peek().status, tokenList.get(i + 1)).getKind() != Action.ActionKind.Error) {
+                        i++;
+                        continue;
+                    }
+
+                    // 恐慌模式: 跳过出错的语句, 回到语句的边界
+                    while (i < tokenList.size() - 1 && !tokenList.get(i).getKind().equals(semicolon)) {
+                        i++;
+                    }
+                    if (tokenList.get(i).getKind().equals(semicolon)) {
+                        i++;
+                    }
+                    while (stateTokens.size() > 1 && !stateTokens.peek().term.equals(semicolon)) {
+                        stateTokens.pop();
+                    }
+                    callWhenInRecover(stateTokens.peek().status);
+                    shiftedSinceRecovery = false;
                 }
             }
         }
+
+        if (parseEvent.shouldCommit()) {
+            parseEvent.tokens = tokenList.size();
+            parseEvent.shifts = shifts;
+            parseEvent.reduces = reduces;
+            parseEvent.commit();
+        }
+
+        // 各观察者的回调耗时在分析结束时一次性记入阶段统计
+        for (final var observer : observers) {
+            if (observer instanceof InstrumentedObserver instrumented) {
+                instrumented.flush();
+            }
+        }
+    }
+
+    /**
+     * @return 位于第 token 个词法单元的错误, 已知词法单元的位置时带上行列号
+     */
+    private Diagnostic syntaxError(int token, String message) {
+        final var positions = context.getSourcePositions();
+        if (positions == null || token >= positions.tokenCount()) {
+            return new Diagnostic("parser", 0, 0, token, message);
+        }
+        final var offset = positions.offset(token);
+        return new Diagnostic("parser", positions.line(offset), positions.column(offset), token, message);
+    }
+
+    /**
+     * @return 形如 "unexpected id 'a', expected one of: =, +" 的错误信息, 期望的词法单元按码点排序
+     */
+    private static String describeError(Status status, Token token) {
+        final var expected = status.action().entrySet().stream()
+                .filter(entry -> entry.getValue().getKind() != Action.ActionKind.Error)
+                .map(Map.Entry::getKey)
+                .sorted(Comparator.comparingInt(TokenKind::getCode))
+                .map(SyntaxAnalyzer::describe)
+                .collect(Collectors.joining(", "));
+        final var unexpected = token.getText().isEmpty()
+                ? describe(token.getKind()) : "%s '%s'".formatted(token.getKindId(), token.getText());
+        return "unexpected %s, expected one of: %s".formatted(unexpected, expected);
+    }
+
+    private static String describe(TokenKind kind) {
+        return kind.equals(TokenKind.eof()) ? "end of input" : kind.getIdentifier();
     }
 }
@@ -13,8 +13,7 @@ import java.util.*;
  */
 public class GrammarInfo {
     // 为了防止有人看不懂, 就不用枚举定义单例了
-    // 顺手写个懒加载
-    private static GrammarInfo instance = null;
+    // 懒加载由持有者类的类初始化完成, JVM 保证其只执行一次且对所有线程可见
     private final Map<String, NonTerminal> nonTerminals = new HashMap<>();
     private final Map<String, Production> productions = new HashMap<>();
     private final List<Production> productionsInOrder = new ArrayList<>();
@@ -49,11 +48,11 @@ public class GrammarInfo {
     }
 
     private static GrammarInfo getInstance() {
-        if (instance == null) {
-            instance = new GrammarInfo();
-        }
+        return Holder.INSTANCE;
+    }
 
-        return instance;
+    private static final class Holder {
+        private static final GrammarInfo INSTANCE = new GrammarInfo();
     }
 
     public static Map<String, NonTerminal> getNonTerminals() {
@@ -0,0 +1,178 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 可以被多个线程共享的符号表, 与 {@link SymbolTable} 一样实现 {@link NumberedSymbolTable}, 另有按名字取得, 新增与判断的方法
+ * <br>
+ * 插入不经过任何全局锁:
+ * <ul>
+ *     <li>名字到编号的映射为 {@link ConcurrentHashMap}, {@link #getOrAdd} 通过 {@code computeIfAbsent} 保证同一个名字只会被插入一次,
+ *     只有落在同一个散列桶中的插入才会互相等待, 查找不加锁</li>
+ *     <li>编号由 {@link AtomicInteger} 分配, 一经分配就不再改变</li>
+ *     <li>条目存放在分块的数组中, 第 k 块的长度为 16 * 2^k, 块在第一次用到时以 CAS 发布, 已有的块从不复制或移动,
+ *     因此插入不需要为扩容而互斥, 读者也不会读到扩容前的旧数组</li>
+ * </ul>
+ * 多个线程并发插入时编号的先后取决于调度, 因此 {@link #dumpTable} 仍按名字排序输出, 结果与 {@link SymbolTable} 完全一致.
+ * 输出应在插入结束之后进行.
+ */
+public class ConcurrentSymbolTable implements NumberedSymbolTable {
+    private static final int FIRST_CHUNK_BITS = 4;
+    // 27 块覆盖 [0, 2^31 - 16) 内的编号
+    private static final int CHUNK_COUNT = 27;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicReferenceArray<AtomicReferenceArray<SymbolTableEntry>> chunks = new AtomicReferenceArray<>(CHUNK_COUNT);
+    private final SymbolOrder order = new SymbolOrder(this::get);
+
+    /**
+     * 获取符号表中已有的条目
+     *
+     * @param text 符号的文本表示
+     * @return 该符号在符号表中的条目
+     * @throws RuntimeException 该符号在表中不存在
+     */
+    public SymbolTableEntry get(String text) {
+        final var id = ids.get(text);
+        if (id == null) {
+            throw new RuntimeException("该符号在表中不存在");
+        }
+        return get(id);
+    }
+
+    /**
+     * 按编号获取符号表中已有的条目. 编号刚分配而条目尚未写入时, 等待插入它的线程写完
+     *
+     * @param id 符号的编号
+     * @return 该符号在符号表中的条目
+     * @throws RuntimeException 该编号在表中不存在
+     */
+    @Override
+    public SymbolTableEntry get(int id) {
+        if (id < 0 || id >= size()) {
+            throw new RuntimeException("该符号在表中不存在");
+        }
+        final var chunk = chunkOf(id);
+        final var offset = offsetOf(id, chunk);
+        while (true) {
+            final var entries = chunks.get(chunk);
+            final var entry = entries == null ? null : entries.get(offset);
+            if (entry != null) {
+                return entry;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 在符号表中新增条目
+     *
+     * @param text 待加入符号表中的新符号的文本表示
+     * @return 该符号在符号表中对应的新条目
+     * @throws RuntimeException 该符号已在表中存在
+     */
+    public SymbolTableEntry add(String text) {
+        final var inserted = new boolean[1];
+        final int id = ids.computeIfAbsent(text, key -> {
+            inserted[0] = true;
+            return register(key);
+        });
+        if (!inserted[0]) {
+            throw new RuntimeException("该符号已在表中存在");
+        }
+        return get(id);
+    }
+
+    /**
+     * 原子地查找或插入符号, 需要先截取出子串作为散列表的键
+     *
+     * @param source 符号所在的文本, 如整个源程序
+     * @param begin  符号在 source 中的起始下标 (含)
+     * @param end    符号在 source 中的结束下标 (不含)
+     * @return 该符号的编号
+     */
+    @Override
+    public int getOrAdd(CharSequence source, int begin, int end) {
+        return getOrAdd(source.subSequence(begin, end).toString());
+    }
+
+    /**
+     * 原子地查找或插入符号
+     *
+     * @param text 符号的文本表示
+     * @return 该符号的编号
+     */
+    public int getOrAdd(String text) {
+        final var id = ids.get(text);
+        return id != null ? id : ids.computeIfAbsent(text, this::register);
+    }
+
+    /**
+     * 判断符号表中有无条目
+     *
+     * @param text 待判断符号的文本表示
+     * @return 该符号的条目是否位于符号表中
+     */
+    public boolean has(String text) {
+        return ids.containsKey(text);
+    }
+
+    /**
+     * @param text 符号的文本表示
+     * @return 该符号的编号, 不存在时为 -1
+     */
+    @Override
+    public int find(CharSequence text) {
+        final var id = ids.get(text.toString());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return 已分配的编号个数, 所有编号都在 [0, size) 内
+     */
+    @Override
+    public int size() {
+        return nextId.get();
+    }
+
+    /**
+     * 将符号表按格式输出, 与 {@link SymbolTable#dumpTable} 的结果一致
+     *
+     * @param path 输出文件路径
+     */
+    @Override
+    public void dumpTable(String path) {
+        order.dump(path, size());
+    }
+
+    /**
+     * 为新符号分配编号并写入条目, 只在 {@code computeIfAbsent} 中调用, 每个名字至多调用一次
+     */
+    private int register(String text) {
+        final var id = nextId.getAndIncrement();
+        final var chunk = chunkOf(id);
+        var entries = chunks.get(chunk);
+        if (entries == null) {
+            // 多个线程可能同时创建同一块, 以先发布的为准
+            chunks.compareAndSet(chunk, null, new AtomicReferenceArray<>(1 << (FIRST_CHUNK_BITS + chunk)));
+            entries = chunks.get(chunk);
+        }
+        entries.set(offsetOf(id, chunk), new SymbolTableEntry(text));
+        return id;
+    }
+
+    /**
+     * 第 k 块存放编号 [16 * (2^k - 1), 16 * (2^(k+1) - 1))
+     */
+    private static int chunkOf(int id) {
+        final var n = (id >>> FIRST_CHUNK_BITS) + 1;
+        return 31 - Integer.numberOfLeadingZeros(n);
+    }
+
+    private static int offsetOf(int id, int chunk) {
+        return id - (((1 << chunk) - 1) << FIRST_CHUNK_BITS);
+    }
+}
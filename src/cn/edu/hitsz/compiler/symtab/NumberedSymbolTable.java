@@ -0,0 +1,47 @@
+package cn.edu.hitsz.compiler.symtab;
+
+/**
+ * 按稠密编号访问的符号表, 编译器各部分 (词法分析器, 各观察者, 增量编译与编译流程) 都只依赖这一接口
+ * <br>
+ * 每个符号在加入时被分配一个编号, 编号从 0 开始连续分配且一经分配就不再改变, 后续阶段可以只保存编号.
+ * 单线程的编译使用 {@link SymbolTable}, 需要在多个线程间共享时使用 {@link ConcurrentSymbolTable},
+ * 由 {@link cn.edu.hitsz.compiler.CompilationContext} 选择.
+ */
+public interface NumberedSymbolTable {
+    /**
+     * 按编号获取符号表中已有的条目
+     *
+     * @param id 符号的编号
+     * @return 该符号在符号表中的条目
+     * @throws RuntimeException 该编号在表中不存在
+     */
+    SymbolTableEntry get(int id);
+
+    /**
+     * 查找符号, 不存在时将其加入符号表
+     *
+     * @param source 符号所在的文本, 如整个源程序
+     * @param begin  符号在 source 中的起始下标 (含)
+     * @param end    符号在 source 中的结束下标 (不含)
+     * @return 该符号的编号
+     */
+    int getOrAdd(CharSequence source, int begin, int end);
+
+    /**
+     * @param text 符号的文本表示
+     * @return 该符号的编号, 不存在时为 -1
+     */
+    int find(CharSequence text);
+
+    /**
+     * @return 符号个数, 所有编号都在 [0, size) 内
+     */
+    int size();
+
+    /**
+     * 将符号表按名字排序输出, 每行为 "(名字, 类型)"
+     *
+     * @param path 输出文件路径
+     */
+    void dumpTable(String path);
+}
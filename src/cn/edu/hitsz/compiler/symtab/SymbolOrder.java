@@ -0,0 +1,104 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.function.IntFunction;
+
+/**
+ * 符号表按名字排序的输出, 由 {@link SymbolTable} 与 {@link ConcurrentSymbolTable} 共用
+ * <br>
+ * 维护一个按名字排好序的编号序列, 每次输出只把上次输出之后新插入的编号排序并归并进来,
+ * 没有新符号时输出就是 O(n) 的, 且逐行直接写入文件, 不再构造中间的字符串列表.
+ * <br>
+ * 序列不在插入时维护: 按名字排序总要 O(n log n) 次比较, 放在插入时只是把这部分代价移进词法分析器查找符号的热路径,
+ * 而不输出符号表的编译 (如 {@code --emit} 未选择符号表, 增量编译的单条语句) 也要为此付出. 一次编译中第一次输出
+ * (词法分析之后) 排序全部符号, 第二次输出 (语法分析之后) 没有新符号, 不再排序.
+ */
+final class SymbolOrder {
+    // 按编号取得条目, 编号在 [0, 符号个数) 内
+    private final IntFunction<SymbolTableEntry> entries;
+    // 按名字排好序的编号, 覆盖上次输出时已有的所有编号
+    private int[] order = new int[0];
+
+    SymbolOrder(IntFunction<SymbolTableEntry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * 返回按名字升序排列的所有编号. 结果数组可能被之后的调用复用, 调用者不应修改.
+     *
+     * @param count 符号个数
+     * @return 按名字升序排列的编号 [0, count)
+     */
+    synchronized int[] orderedIds(int count) {
+        final var sortedCount = order.length;
+        if (count == sortedCount) {
+            return order;
+        }
+
+        // 新插入的编号为 [sortedCount, count), 排序后与已有的序列归并
+        final var tail = new int[count - sortedCount];
+        for (int i = 0; i < tail.length; i++) {
+            tail[i] = sortedCount + i;
+        }
+        sortByText(tail, new int[tail.length], 0, tail.length);
+
+        final var merged = new int[count];
+        var i = 0;
+        var j = 0;
+        for (int k = 0; k < count; k++) {
+            if (j == tail.length || (i < sortedCount && compareText(order[i], tail[j]) <= 0)) {
+                merged[k] = order[i++];
+            } else {
+                merged[k] = tail[j++];
+            }
+        }
+        order = merged;
+        return order;
+    }
+
+    /**
+     * 按名字升序逐行输出 "(名字, 类型)"
+     *
+     * @param path  输出文件路径
+     * @param count 符号个数
+     */
+    void dump(String path, int count) {
+        final var ids = orderedIds(count);
+        FileUtils.write(path, writer -> {
+            for (final var id : ids) {
+                final var entry = entries.apply(id);
+                // null 类型按 "null" 输出
+                writer.write('(');
+                writer.write(entry.getText());
+                writer.write(", ");
+                writer.write(String.valueOf(entry.getType()));
+                writer.write(')');
+                writer.newLine();
+            }
+        });
+    }
+
+    private void sortByText(int[] ids, int[] buffer, int begin, int end) {
+        if (end - begin < 2) {
+            return;
+        }
+        final var mid = (begin + end) >>> 1;
+        sortByText(ids, buffer, begin, mid);
+        sortByText(ids, buffer, mid, end);
+        System.arraycopy(ids, begin, buffer, begin, end - begin);
+        var i = begin;
+        var j = mid;
+        for (int k = begin; k < end; k++) {
+            if (j == end || (i < mid && compareText(buffer[i], buffer[j]) <= 0)) {
+                ids[k] = buffer[i++];
+            } else {
+                ids[k] = buffer[j++];
+            }
+        }
+    }
+
+    private int compareText(int a, int b) {
+        return entries.apply(a).getText().compareTo(entries.apply(b).getText());
+    }
+}
@@ -1,11 +1,6 @@
 package cn.edu.hitsz.compiler.symtab;
 
-import cn.edu.hitsz.compiler.utils.FileUtils;
-
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * 符号表
@@ -13,10 +8,25 @@ import java.util.Map;
  * 由于源语言比较简易, 加之 Java 中具有非常好用的通用数据结构类型, 本项目其实并不一定需要一个集中的 "符号表" 来存储源语言中的
  * <b>所有符号的所有信息</b>. 但为了切合理论课程教学, 提高实验实践技能的通用性, 我们按照一般编译器项目中符号表的设计设计了该符号表.
  * 其在代码中的作用可能并不明显, 但我们希望同学们可以借此体验符号表的设计思想.
+ * <br>
+ * 每个符号在加入时被分配一个稠密的 int 编号 (从 0 开始), 条目按编号存放在数组中. 名字到编号的映射是一个自行实现的开放寻址
+ * 散列表 (线性探测), 散列值直接在字符区间上计算, 因此词法分析器可以不截取子串就在源文本上查找或插入符号.
+ * 后续阶段可以只保存编号, 通过 {@link #get(int)} 取得条目.
+ * <br>
+ * 输出时需要按名字排序, 见 {@link SymbolOrder}.
+ * <br>
+ * 本类只应被一个线程使用, 多线程共享的符号表见 {@link ConcurrentSymbolTable}.
  */
-public class SymbolTable {
+public class SymbolTable implements NumberedSymbolTable {
+    private static final int INITIAL_CAPACITY = 16;
 
-    private final Map<String, SymbolTableEntry> symbolTable = new HashMap<>();
+    // 以编号为下标的条目与名字的散列值
+    private SymbolTableEntry[] entries = new SymbolTableEntry[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    // 开放寻址的散列槽, 存放 编号 + 1, 0 表示空槽. 容量为 2 的幂, 装载因子不超过 1/2
+    private int[] slots = new int[2 * INITIAL_CAPACITY];
+    private final SymbolOrder order = new SymbolOrder(this::get);
 
     /**
      * 获取符号表中已有的条目
@@ -26,11 +36,26 @@ public class SymbolTable {
      * @throws RuntimeException 该符号在表中不存在
      */
     public SymbolTableEntry get(String text) {
-        SymbolTableEntry symbolTableEntry = symbolTable.get(text);
-        if (symbolTableEntry == null) {
+        final var id = find(text);
+        if (id < 0) {
             throw new RuntimeException("该符号在表中不存在");
         }
-        return symbolTableEntry;
+        return entries[id];
+    }
+
+    /**
+     * 按编号获取符号表中已有的条目
+     *
+     * @param id 符号的编号
+     * @return 该符号在符号表中的条目
+     * @throws RuntimeException 该编号在表中不存在
+     */
+    @Override
+    public SymbolTableEntry get(int id) {
+        if (id < 0 || id >= size) {
+            throw new RuntimeException("该符号在表中不存在");
+        }
+        return entries[id];
     }
 
     /**
@@ -45,9 +70,24 @@ public class SymbolTable {
         if (has(text)) {
             throw new RuntimeException("该符号已在表中存在");
         }
-        SymbolTableEntry symbolTableEntry = new SymbolTableEntry(text);
-        symbolTable.put(text, symbolTableEntry);
-        return symbolTableEntry;
+        // insert 可能扩容 entries, 需要在其返回后再读取数组
+        final var id = insert(text, hash(text, 0, text.length()));
+        return entries[id];
+    }
+
+    /**
+     * 查找符号, 不存在时将其加入符号表
+     *
+     * @param source 符号所在的文本, 如整个源程序
+     * @param begin  符号在 source 中的起始下标 (含)
+     * @param end    符号在 source 中的结束下标 (不含)
+     * @return 该符号的编号
+     */
+    @Override
+    public int getOrAdd(CharSequence source, int begin, int end) {
+        final var hash = hash(source, begin, end);
+        final var id = probe(source, begin, end, hash);
+        return id >= 0 ? id : insert(source.subSequence(begin, end).toString(), hash);
     }
 
     /**
@@ -57,16 +97,89 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean has(String text) {
-        return symbolTable.containsKey(text);
+        return find(text) >= 0;
     }
 
     /**
-     * 获得符号表的所有条目以供 {@code dumpTable} 使用
-     *
-     * @return 符号表的所有条目
+     * @param text 符号的文本表示
+     * @return 该符号的编号, 不存在时为 -1
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
-        return symbolTable;
+    @Override
+    public int find(CharSequence text) {
+        return probe(text, 0, text.length(), hash(text, 0, text.length()));
+    }
+
+    /**
+     * @return 符号个数, 所有编号都在 [0, size) 内
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int probe(CharSequence source, int begin, int end, int hash) {
+        final var mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            final var id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(entries[id].getText(), source, begin, end)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(String text, int hash) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, 2 * size);
+            hashes = Arrays.copyOf(hashes, 2 * size);
+            rehash(4 * size);
+        }
+
+        final var id = size++;
+        entries[id] = new SymbolTableEntry(text);
+        hashes[id] = hash;
+        place(id);
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            place(id);
+        }
+    }
+
+    private void place(int id) {
+        final var mask = slots.length - 1;
+        var slot = hashes[id] & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private static boolean matches(String text, CharSequence source, int begin, int end) {
+        if (text.length() != end - begin) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) != source.charAt(begin + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在字符区间上计算散列值, 最后乘以黄金分割常数把高位的差异扩散到低位
+     */
+    private static int hash(CharSequence source, int begin, int end) {
+        var hash = 0;
+        for (int i = begin; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        final var mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
     }
 
     /**
@@ -74,17 +187,8 @@ public class SymbolTable {
      *
      * @param path 输出文件路径
      */
+    @Override
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
-        entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
-
-        final var lines = new ArrayList<String>();
-        for (final var entry : entriesInOrder) {
-            // null in %s will be "null"
-            lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
-        }
-
-        FileUtils.writeLines(path, lines);
+        order.dump(path, size());
     }
 }
-
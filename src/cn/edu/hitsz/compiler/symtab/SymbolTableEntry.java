@@ -25,17 +25,19 @@ public class SymbolTableEntry {
     /**
      * @return 该标识符符号可以绑定到的源语言对象的类型
      */
-    public SourceCodeType getType() {
+    public synchronized SourceCodeType getType() {
         return type;
     }
 
     /**
      * 由于这个类型严格来说只能在语法分析后才能获得, 所以为了在词法分析时就构造出符号表,
      * 我们只能暴露出该接口用以修改该成员. 该成员应该且只应该被修改一次.
+     * <br>
+     * 条目可能被多个线程共享 (见 {@link ConcurrentSymbolTable}), 因此 "检查后设置" 需要加锁.
      *
      * @param type 该标识符符号可以绑定到的源语言对象的类型
      */
-    public void setType(SourceCodeType type) {
+    public synchronized void setType(SourceCodeType type) {
         if (this.type != null) {
             throw new RuntimeException("Can NOT set type for an entry twice");
         }
@@ -62,6 +62,41 @@ public final class FilePathConfig {
      */
     public static final String ASSEMBLY_LANGUAGE_PATH = "data/out/assembly_language.asm";
 
+    /**
+     * 不带头部的机器码
+     */
+    public static final String FLAT_BINARY_PATH = "data/out/assembly_language.bin";
+
+    /**
+     * ELF 可执行文件
+     */
+    public static final String ELF_PATH = "data/out/assembly_language.elf";
+
+    /**
+     * 机器码模拟执行的结果
+     */
+    public static final String SIMULATE_RESULT = "data/out/simulate_result.txt";
+
+    /**
+     * 机器码各地址对应的源代码行
+     */
+    public static final String LINE_TABLE_PATH = "data/out/line_table.txt";
+
+    /**
+     * 语法分析的动作热度报告
+     */
+    public static final String PARSER_STATISTICS_PATH = "data/out/parser_statistics.txt";
+
+    /**
+     * JSON 格式的各阶段统计数据
+     */
+    public static final String PROFILE_JSON_PATH = "data/out/phase_profile.json";
+
+    /**
+     * CSV 格式的各阶段统计数据
+     */
+    public static final String PROFILE_CSV_PATH = "data/out/phase_profile.csv";
+
     private FilePathConfig() {
     }
 }
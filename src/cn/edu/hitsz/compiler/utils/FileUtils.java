@@ -1,20 +1,134 @@
 package cn.edu.hitsz.compiler.utils;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 用于方便地做文件读写的工具
+ * <br>
+ * 在 {@link #beginAsyncWrites()} 与 {@link AsyncWrites#close()} 之间, 当前线程的所有写入都是异步的:
+ * 调用者的线程只负责把内容生成为字节, 真正的写入交给共享的写入线程完成, 调用者随即返回继续后面的阶段.
+ * 内容在调用时就已确定, 因此写出的是调用那一刻的状态, 之后对同一对象的修改不会影响已提交的写入.
  */
 public final class FileUtils {
+    // 当前线程的异步写入阶段, 为 null 时同步写入
+    private static final ThreadLocal<AsyncWrites> ASYNC_WRITES = new ThreadLocal<>();
+
     private FileUtils() {
     }
 
+    /**
+     * 写入线程, 第一次异步写入时才创建. 写入受 I/O 限制, 少量守护线程即可, 进程退出前由各阶段的屏障保证写入完成
+     */
+    private static final class Writers {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Math.min(4, Runtime.getRuntime().availableProcessors()), runnable -> {
+                    final var thread = new Thread(runnable, "file-writer-" + COUNT.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 在当前线程上开始异步写入, 直到返回的阶段被关闭
+     *
+     * @return 异步写入阶段, 关闭它即等待所有写入完成
+     * @throws RuntimeException 当前线程已经处于异步写入阶段中
+     */
+    public static AsyncWrites beginAsyncWrites() {
+        if (ASYNC_WRITES.get() != null) {
+            throw new RuntimeException("Asynchronous writes have already begun on " + Thread.currentThread().getName());
+        }
+        final var writes = new AsyncWrites();
+        ASYNC_WRITES.set(writes);
+        return writes;
+    }
+
+    /**
+     * 一个线程上的异步写入阶段, 只能在开始它的线程上关闭
+     */
+    public static final class AsyncWrites implements AutoCloseable {
+        private final List<Future<?>> pending = new ArrayList<>();
+
+        private AsyncWrites() {
+        }
+
+        private void submit(String path, byte[] content) {
+            pending.add(Writers.EXECUTOR.submit(() -> writeNow(path, content)));
+        }
+
+        /**
+         * 屏障: 结束异步写入阶段并等待所有已提交的写入完成
+         *
+         * @throws RuntimeException 有写入失败, 其余失败的写入作为 suppressed 附在其上
+         */
+        @Override
+        public void close() {
+            if (ASYNC_WRITES.get() == this) {
+                ASYNC_WRITES.remove();
+            }
+
+            RuntimeException failure = null;
+            var interrupted = false;
+            for (final var write : pending) {
+                RuntimeException exception = null;
+                while (true) {
+                    try {
+                        write.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        // 屏障必须等到写入结束, 中断留到最后恢复
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        exception = e.getCause() instanceof RuntimeException runtime
+                                ? runtime : new RuntimeException(e.getCause());
+                        break;
+                    }
+                }
+                if (exception != null) {
+                    if (failure == null) {
+                        failure = exception;
+                    } else {
+                        failure.addSuppressed(exception);
+                    }
+                }
+            }
+            pending.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static void writeNow(String path, byte[] content) {
+        try {
+            Files.write(Paths.get(path), content);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
     /**
      * 读取文本文件并以String形式返回文件内容
      *
@@ -50,6 +164,17 @@ public final class FileUtils {
     }
 
     public static void writeLines(String path, List<String> lines) {
+        final var writes = ASYNC_WRITES.get();
+        if (writes != null) {
+            final var separator = System.lineSeparator();
+            final var content = new StringBuilder();
+            for (final var line : lines) {
+                content.append(line).append(separator);
+            }
+            writes.submit(path, content.toString().getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
         try {
             Files.write(Paths.get(path), lines, StandardCharsets.UTF_8);
         } catch (IOException e) {
@@ -57,6 +182,92 @@ public final class FileUtils {
         }
     }
 
+    /**
+     * 以流的方式写入文件, 内容由调用者逐段写入带缓冲的 writer, 不需要先在内存中拼出所有行
+     *
+     * @param path   要写入的文件路径
+     * @param action 写入内容的过程
+     */
+    public static void write(String path, WriterAction action) {
+        final var writes = ASYNC_WRITES.get();
+        if (writes != null) {
+            final var content = new ByteArrayOutputStream();
+            try (final var writer = new BufferedWriter(new OutputStreamWriter(content, StandardCharsets.UTF_8))) {
+                action.accept(writer);
+            } catch (IOException e) {
+                throw new RuntimeException("IO Exception for " + path, e);
+            }
+            writes.submit(path, content.toByteArray());
+            return;
+        }
+
+        try (final var writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            action.accept(writer);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 向 writer 写入内容的过程, 允许抛出 IOException
+     */
+    @FunctionalInterface
+    public interface WriterAction {
+        void accept(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * 将缓冲区中剩余的字节写入指定文件, 文件已存在时覆盖
+     *
+     * @param path   要写入的文件路径
+     * @param buffer 要写入的内容
+     */
+    public static void writeBytes(String path, ByteBuffer buffer) {
+        final var writes = ASYNC_WRITES.get();
+        if (writes != null) {
+            // 缓冲区可能被调用者复用, 提交前复制一份
+            final var content = new byte[buffer.remaining()];
+            buffer.get(content);
+            writes.submit(path, content);
+            return;
+        }
+
+        try (final var channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 删除文件, 文件不存在时什么也不做
+     *
+     * @param path 文件路径
+     */
+    public static void deleteIfExists(String path) {
+        try {
+            Files.deleteIfExists(Paths.get(path));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 创建目录及其所有不存在的父目录
+     *
+     * @param path 目录路径
+     */
+    public static void createDirectories(String path) {
+        try {
+            Files.createDirectories(Paths.get(path));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
     /**
      * 创建空文件
      *
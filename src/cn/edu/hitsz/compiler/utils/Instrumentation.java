@@ -0,0 +1,257 @@
+package cn.edu.hitsz.compiler.utils;
+
+import jdk.jfr.EventType;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按阶段记录编译过程的墙钟时间, CPU 时间与分配的字节数
+ * <br>
+ * 用法为 {@code try (final var scope = instrumentation.begin("lex")) { ... }}. 同名阶段多次进入时累加, 阶段可以嵌套,
+ * 外层阶段的数据包含内层阶段. 作用域变量在块内不被引用, {@code javac -Xlint:try} 会就此警告, 使用处所在的方法以
+ * {@code @SuppressWarnings("try")} 标注. CPU 时间与分配字节数都只统计当前线程, 由 {@link java.lang.management.ThreadMXBean}
+ * 与 {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()} 提供, JVM 不支持时记为 -1.
+ * <br>
+ * 语法分析观察者的回调这类极其频繁的阶段不适合逐次进入作用域, 由调用方自行用 {@link System#nanoTime()} 累计后以 {@link #record} 记入,
+ * 只有次数与墙钟时间.
+ * <br>
+ * 关闭时使用 {@link #disabled()} 返回的共享实例, 其 {@link #begin} 返回同一个什么都不做的 {@link Scope}, 不读取时钟也不分配对象.
+ * 一个实例只应被一个线程使用, 多个实例可以用 {@link #merge} 汇总.
+ * <br>
+ * 此外, 只要 JFR 正在记录 {@link PhaseEvent}, 无论是否开启统计, 每个阶段都会提交一个 PhaseEvent.
+ */
+public final class Instrumentation {
+    private static final Instrumentation DISABLED = new Instrumentation(false);
+    private static final EventType PHASE_EVENTS = EventType.getEventType(PhaseEvent.class);
+    private static final Scope NO_OP = () -> {
+    };
+
+    private final boolean enabled;
+    private final Map<String, PhaseStats> phases = new LinkedHashMap<>();
+
+    private Instrumentation(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return 不做任何记录的共享实例
+     */
+    public static Instrumentation disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return 一个新的记录实例
+     */
+    public static Instrumentation enabled() {
+        return new Instrumentation(true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 进入一个阶段
+     *
+     * @param phase 阶段名
+     * @return 在阶段结束时关闭的作用域
+     */
+    public Scope begin(String phase) {
+        final var event = PHASE_EVENTS.isEnabled() ? new PhaseEvent() : null;
+        if (event != null) {
+            event.phase = phase;
+            event.begin();
+        }
+        if (!enabled) {
+            return event == null ? NO_OP : event::commit;
+        }
+        final var stats = phases.computeIfAbsent(phase, PhaseStats::new);
+        return new MeasuredScope(stats, event);
+    }
+
+    /**
+     * 直接累加一个阶段的次数与墙钟时间, 不统计 CPU 时间与分配字节数, 二者记为 -1, 也不提交 PhaseEvent. 关闭统计时什么都不做
+     *
+     * @param phase     阶段名
+     * @param count     进入该阶段的次数
+     * @param wallNanos 墙钟时间, 单位为纳秒
+     */
+    public void record(String phase, long count, long wallNanos) {
+        if (!enabled) {
+            return;
+        }
+        final var stats = phases.computeIfAbsent(phase, PhaseStats::new);
+        stats.count += count;
+        stats.wallNanos += wallNanos;
+        stats.cpuNanos = -1;
+        stats.allocatedBytes = -1;
+    }
+
+    /**
+     * @return 按首次进入的顺序排列的各阶段数据
+     */
+    public List<PhaseStats> getPhases() {
+        return List.copyOf(phases.values());
+    }
+
+    /**
+     * 将另一个实例的数据累加到本实例中, 可以在多个线程中对同一个汇总实例调用
+     *
+     * @param other 另一个实例
+     */
+    public synchronized void merge(Instrumentation other) {
+        for (final var stats : other.getPhases()) {
+            phases.computeIfAbsent(stats.getName(), PhaseStats::new).add(stats);
+        }
+    }
+
+    /**
+     * @return JSON 格式的报告
+     */
+    public String toJson() {
+        final var builder = new StringBuilder("{\"phases\": [");
+        var first = true;
+        for (final var stats : phases.values()) {
+            builder.append(first ? "\n" : ",\n");
+            first = false;
+            builder.append("  {\"name\": \"").append(stats.getName().replace("\\", "\\\\").replace("\"", "\\\""))
+                    .append("\", \"count\": ").append(stats.getCount())
+                    .append(", \"wallNanos\": ").append(stats.getWallNanos())
+                    .append(", \"cpuNanos\": ").append(stats.getCpuNanos())
+                    .append(", \"allocatedBytes\": ").append(stats.getAllocatedBytes()).append('}');
+        }
+        return builder.append("\n]}").toString();
+    }
+
+    /**
+     * @return CSV 格式的报告, 第一行为表头
+     */
+    public List<String> toCsv() {
+        final var lines = new ArrayList<String>(phases.size() + 1);
+        lines.add("phase,count,wall_ns,cpu_ns,allocated_bytes");
+        for (final var stats : phases.values()) {
+            lines.add("%s,%d,%d,%d,%d".formatted(stats.getName(), stats.getCount(), stats.getWallNanos(),
+                    stats.getCpuNanos(), stats.getAllocatedBytes()));
+        }
+        return lines;
+    }
+
+    /**
+     * 阶段的作用域, 关闭时结束计时
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 一个阶段的累计数据
+     */
+    public static final class PhaseStats {
+        private final String name;
+        private long count = 0;
+        private long wallNanos = 0;
+        private long cpuNanos = 0;
+        private long allocatedBytes = 0;
+
+        private PhaseStats(String name) {
+            this.name = name;
+        }
+
+        private void add(PhaseStats other) {
+            count += other.count;
+            wallNanos += other.wallNanos;
+            cpuNanos = cpuNanos < 0 || other.cpuNanos < 0 ? -1 : cpuNanos + other.cpuNanos;
+            allocatedBytes = allocatedBytes < 0 || other.allocatedBytes < 0 ? -1 : allocatedBytes + other.allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 进入该阶段的次数
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return CPU 时间, 不支持时为 -1
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        /**
+         * @return 分配的字节数, 不支持时为 -1
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    private static final class MeasuredScope implements Scope {
+        private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+        private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+        private static final boolean CPU_TIME = cpuTimeSupported();
+
+        private final PhaseStats stats;
+        private final PhaseEvent event;
+        private final long wallBegin;
+        private final long cpuBegin;
+        private final long allocatedBegin;
+
+        private MeasuredScope(PhaseStats stats, PhaseEvent event) {
+            this.stats = stats;
+            this.event = event;
+            this.allocatedBegin = ALLOCATIONS != null ? ALLOCATIONS.getCurrentThreadAllocatedBytes() : -1;
+            this.cpuBegin = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1;
+            this.wallBegin = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            final var wallEnd = System.nanoTime();
+            final var cpuEnd = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1;
+            final var allocatedEnd = ALLOCATIONS != null ? ALLOCATIONS.getCurrentThreadAllocatedBytes() : -1;
+            stats.count++;
+            stats.wallNanos += wallEnd - wallBegin;
+            stats.cpuNanos = CPU_TIME ? stats.cpuNanos + cpuEnd - cpuBegin : -1;
+            stats.allocatedBytes = ALLOCATIONS != null ? stats.allocatedBytes + allocatedEnd - allocatedBegin : -1;
+            if (event != null) {
+                event.commit();
+            }
+        }
+
+        private static boolean cpuTimeSupported() {
+            if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+                return false;
+            }
+            if (!THREADS.isThreadCpuTimeEnabled()) {
+                THREADS.setThreadCpuTimeEnabled(true);
+            }
+            return true;
+        }
+
+        private static com.sun.management.ThreadMXBean allocationBean() {
+            if (THREADS instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()) {
+                if (!bean.isThreadAllocatedMemoryEnabled()) {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                }
+                return bean;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.Arrays;
+
+/**
+ * 与某个指令列表平行的源代码行号数组, 第 i 个元素是第 i 条指令所属语句所在的行, 编译器自己生成的指令为 0
+ * <br>
+ * 各个 Pass 都是顺序处理输入的指令并追加输出的, 因此只需在处理完第 i 条输入指令之后调用 {@link #extend},
+ * 把这期间追加的输出指令都记为第 i 条输入指令的行号, 不必改动生成指令的各处代码.
+ */
+public final class LineNumbers {
+    private int[] lines;
+    private int size = 0;
+
+    /**
+     * @param expectedSize 预计的指令条数
+     */
+    public LineNumbers(int expectedSize) {
+        lines = new int[Math.max(expectedSize, 16)];
+    }
+
+    /**
+     * 将行号数组补齐到 size 个元素, 新增的元素都为 line
+     *
+     * @param size 输出指令的条数
+     * @param line 新增的输出指令的行号
+     */
+    public void extend(int size, int line) {
+        if (size > lines.length) {
+            lines = Arrays.copyOf(lines, Math.max(size, 2 * lines.length));
+        }
+        Arrays.fill(lines, this.size, Math.max(size, this.size), line);
+        this.size = Math.max(size, this.size);
+    }
+
+    /**
+     * @return 元素个数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 恰好含 {@link #size()} 个元素的数组
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(lines, size);
+    }
+}
@@ -0,0 +1,115 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.Arrays;
+
+/**
+ * 以 long 为键, int 为值的开放寻址哈希表
+ * <br>
+ * 采用线性探测, 键与值分别存放在原始类型数组中, 查找与插入过程中不产生任何装箱对象. 只支持插入与查询, 不支持删除,
+ * 这对于各类 "一次遍历建表" 的优化 Pass 已经足够.
+ */
+public final class LongIntHashMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size = 0;
+    private int mask;
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对个数
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @param key     键
+     * @param missing 键不存在时返回的值
+     * @return 键对应的值, 若不存在则为 missing
+     */
+    public int get(long key, int missing) {
+        int slot = slotOf(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missing;
+    }
+
+    /**
+     * 插入或覆盖键值对
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void put(long key, int value) {
+        int slot = slotOf(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        // 装载因子保持在 3/4 以下
+        if (++size * 4 > keys.length * 3) {
+            rehash();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int slotOf(long key) {
+        // Fibonacci 哈希, 取高位以打散低位相近的键
+        final var mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        final var oldKeys = keys;
+        final var oldValues = values;
+        final var oldUsed = used;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slotOf(oldKeys[i]);
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.Arrays;
+
+/**
+ * 以对象为键, int 为值的开放寻址哈希表
+ * <br>
+ * 与 {@link LongIntHashMap} 相同, 采用线性探测, 值存放在 int 数组中, 查找与插入过程中不产生任何装箱对象.
+ * 比较键时先比较引用再调用 equals, 同一个键对象被反复查找时不会进入 equals. 只支持插入与查询, 不支持删除.
+ *
+ * @param <K> 键的类型
+ */
+public final class ObjectIntHashMap<K> {
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+
+    public ObjectIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对个数
+     */
+    public ObjectIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * @param key     键, 不能为 null
+     * @param missing 键不存在时返回的值
+     * @return 键对应的值, 若不存在则为 missing
+     */
+    public int get(K key, int missing) {
+        int slot = slotOf(key);
+        Object existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing == key || existing.equals(key)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missing;
+    }
+
+    /**
+     * 插入或覆盖键值对
+     *
+     * @param key   键, 不能为 null
+     * @param value 值
+     */
+    public void put(K key, int value) {
+        int slot = slotOf(key);
+        Object existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing == key || existing.equals(key)) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        // 装载因子保持在 3/4 以下
+        if (++size * 4 > keys.length * 3) {
+            rehash();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    private int slotOf(Object key) {
+        // 与 LongIntHashMap 相同的 Fibonacci 哈希, 打散 hashCode 低位相近的键
+        final var mixed = key.hashCode() * 0x9E3779B9;
+        return (mixed ^ (mixed >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash() {
+        final var oldKeys = keys;
+        final var oldValues = values;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package cn.edu.hitsz.compiler.utils;
+
+import jdk.jfr.*;
+
+/**
+ * 一个编译阶段的 JFR 事件, 持续时间即阶段的墙钟时间
+ * <br>
+ * 由 {@link Instrumentation#begin} 在 JFR 记录该事件时产生, 与是否开启 {@code --profile} 无关.
+ */
+@Name("cn.edu.hitsz.compiler.Phase")
+@Label("Compiler Phase")
+@Category({"Compiler", "Phases"})
+@Description("Boundaries of one compiler phase")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+    @Label("Phase")
+    public String phase;
+}
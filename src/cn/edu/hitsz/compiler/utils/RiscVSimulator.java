@@ -0,0 +1,142 @@
+package cn.edu.hitsz.compiler.utils;
+
+/**
+ * 用来模拟执行后端生成的 RV32IM 机器码的类
+ * <br>
+ * 只支持后端会生成的指令子集: lui, addi, slli, add, sub, mul, lw, sw. 伪指令 li, mv, neg 在编码时已经展开.
+ * 程序从第一条指令顺序执行到最后一条, 结束时 a0 即为返回值.
+ * <br>
+ * 除动态指令条数外, 还按一个简单的单发射顺序流水线估算周期数: 每条指令 1 周期, mul 额外 {@value #MUL_EXTRA_CYCLES} 周期,
+ * lw 的结果紧接着被下一条指令使用时额外停顿 {@value #LOAD_USE_STALL_CYCLES} 周期. 周期数只用于比较不同后端优化的效果.
+ */
+public class RiscVSimulator {
+    private static final int MUL_EXTRA_CYCLES = 2;
+    private static final int LOAD_USE_STALL_CYCLES = 1;
+    // 栈的大小, 单位为字节
+    private static final int STACK_SIZE = 1 << 16;
+    private static final int SP = 2;
+    private static final int A0 = 10;
+
+    private final int[] words;
+    private final int[] registers = new int[32];
+    private final int[] stack = new int[STACK_SIZE / 4];
+    private long instructionCount = 0;
+    private long cycleCount = 0;
+
+    private RiscVSimulator(int[] words) {
+        this.words = words;
+    }
+
+    public static RiscVSimulator load(int[] words) {
+        return new RiscVSimulator(words);
+    }
+
+    /**
+     * 执行全部指令
+     *
+     * @return 执行结束时 a0 的值
+     */
+    public int execute() {
+        instructionCount = 0;
+        cycleCount = 0;
+        registers[SP] = STACK_SIZE;
+        // 上一条指令若为 lw, 记录其目的寄存器, 否则为 0
+        var pendingLoad = 0;
+
+        for (final var word : words) {
+            final var opcode = word & 0x7f;
+            final var rd = (word >>> 7) & 0x1f;
+            final var funct3 = (word >>> 12) & 0x7;
+            final var rs1 = (word >>> 15) & 0x1f;
+            final var rs2 = (word >>> 20) & 0x1f;
+            final var funct7 = word >>> 25;
+            final var immI = word >> 20;
+
+            instructionCount++;
+            cycleCount++;
+            if (pendingLoad != 0 && ((usesRs1(opcode) && pendingLoad == rs1) || (usesRs2(opcode) && pendingLoad == rs2))) {
+                cycleCount += LOAD_USE_STALL_CYCLES;
+            }
+            pendingLoad = 0;
+
+            final int value;
+            switch (opcode) {
+                case 0b0110111 -> value = word & 0xfffff000;
+                case 0b0010011 -> value = switch (funct3) {
+                    case 0b000 -> registers[rs1] + immI;
+                    case 0b001 -> registers[rs1] << (immI & 0x1f);
+                    default -> throw unsupported(word);
+                };
+                case 0b0110011 -> {
+                    if (funct3 != 0) {
+                        throw unsupported(word);
+                    }
+                    value = switch (funct7) {
+                        case 0b0000000 -> registers[rs1] + registers[rs2];
+                        case 0b0100000 -> registers[rs1] - registers[rs2];
+                        case 0b0000001 -> {
+                            cycleCount += MUL_EXTRA_CYCLES;
+                            yield registers[rs1] * registers[rs2];
+                        }
+                        default -> throw unsupported(word);
+                    };
+                }
+                case 0b0000011 -> {
+                    if (funct3 != 0b010) {
+                        throw unsupported(word);
+                    }
+                    value = stack[wordIndex(registers[rs1] + immI)];
+                    pendingLoad = rd;
+                }
+                case 0b0100011 -> {
+                    if (funct3 != 0b010) {
+                        throw unsupported(word);
+                    }
+                    final var offset = (funct7 << 25 >> 20) | rd;
+                    stack[wordIndex(registers[rs1] + offset)] = registers[rs2];
+                    continue;
+                }
+                default -> throw unsupported(word);
+            }
+
+            if (rd != 0) {
+                registers[rd] = value;
+            }
+        }
+
+        return registers[A0];
+    }
+
+    /**
+     * @return 最近一次 {@code execute} 执行的指令条数
+     */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * @return 最近一次 {@code execute} 按流水线模型估算的周期数
+     */
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    private static boolean usesRs1(int opcode) {
+        return opcode != 0b0110111;
+    }
+
+    private static boolean usesRs2(int opcode) {
+        return opcode == 0b0110011 || opcode == 0b0100011;
+    }
+
+    private int wordIndex(int address) {
+        if (address < 0 || address >= STACK_SIZE || (address & 3) != 0) {
+            throw new RuntimeException("Illegal memory access at " + address);
+        }
+        return address >> 2;
+    }
+
+    private static RuntimeException unsupported(int word) {
+        return new RuntimeException("Unsupported instruction: 0x%08x".formatted(word));
+    }
+}